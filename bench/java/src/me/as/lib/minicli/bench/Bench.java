@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli.bench;
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+
+/**
+ * The little harness of the benchmarks of this module: every case is run for some warm up rounds, then measured for some more, and the
+ * median of the measured rounds is printed together with the bytes allocated per operation (when the JVM can tell).
+ *
+ * <p>
+ * The benchmarks use only the public API of miniCLI, so the same benchmark can be run against two builds of it (for example before
+ * and after a change) just by changing the classpath.
+ */
+final class Bench
+{
+ static final int warmupRounds=5;
+ static final int measuredRounds=7;
+
+ static volatile Object sink;
+
+
+ interface Case
+ {
+  void run(int operations) throws Exception;
+ }
+
+
+ private Bench(){}
+
+
+ static void run(String name, int operations, Case c) throws Exception
+ {
+  ThreadMXBean threads=ManagementFactory.getThreadMXBean();
+  com.sun.management.ThreadMXBean allocations=(threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean)threads : null);
+  long nanos[]=new long[measuredRounds];
+  long bytes=-1;
+  int t;
+
+  for (t=0;t<warmupRounds;t++) c.run(operations);
+
+  for (t=0;t<measuredRounds;t++)
+  {
+   long b0=(allocations!=null ? allocations.getCurrentThreadAllocatedBytes() : 0);
+   long t0=System.nanoTime();
+
+   c.run(operations);
+
+   nanos[t]=System.nanoTime()-t0;
+   if (allocations!=null) bytes=allocations.getCurrentThreadAllocatedBytes()-b0;
+  }
+
+  Arrays.sort(nanos);
+
+  System.out.printf("%-50s %12.1f ns/op %12s B/op%n", name, nanos[measuredRounds/2]/(double)operations,
+   (bytes>=0 ? String.valueOf(bytes/operations) : "?"));
+ }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli.bench;
+
+
+import me.as.lib.core.lang.ClassExtras;
+import me.as.lib.core.report.Problems;
+import me.as.lib.minicli.CLIArgument;
+import me.as.lib.minicli.CLIOption;
+import me.as.lib.minicli.CommandLineHandler;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+
+/**
+ * How fast values are written into the fields of the runner (see FieldBinder):
+ * <pre>
+ * java -cp &lt;classpath&gt; me.as.lib.minicli.bench.BindingBenchmark [micro]
+ * </pre>
+ * Without arguments it parses a command line with a few numeric options and 50000 positionals, through the public API only, so it can
+ * be run against older builds too. With micro it also compares a single int field written by a FieldBinder, by a FieldBinder of a
+ * generated parser (a plain assignment) and by ClassExtras.setFieldValue_bruteForce.
+ */
+public final class BindingBenchmark
+{
+ public static final int positionals=50000;
+
+
+ public static class Runner
+ {
+  @CLIOption(name="-i") private int i;
+  @CLIOption(name="-l") private long l;
+  @CLIOption(name="-d") private double d;
+  @CLIOption(name="-s") private String s;
+  @CLIArgument(index=0) private List<String> files;
+ }
+
+
+ private BindingBenchmark(){}
+
+
+ public static void main(String args[]) throws Exception
+ {
+  String argv[]=new String[positionals+8];
+  int t;
+
+  // positionals first: older builds bind them only there
+  for (t=0;t<positionals;t++) argv[t]="file"+t+".txt";
+  argv[t++]="-i"; argv[t++]="42";
+  argv[t++]="-l"; argv[t++]="4200000000";
+  argv[t++]="-d"; argv[t++]="4.2";
+  argv[t++]="-s"; argv[t]="forty-two";
+
+  Bench.run("parse, "+positionals+" positionals + 4 options", 1, n ->
+  {
+   for (int k=0;k<n;k++)
+   {
+    Problems problems=new Problems();
+    Bench.sink=CommandLineHandler.prepare(Runner.class, argv, problems);
+    if (Bench.sink==null) throw new IllegalStateException(problems.toString());
+   }
+  });
+
+  if (args.length>0 && args[0].equals("micro")) micro();
+ }
+
+
+ private static void micro() throws Exception
+ {
+  Field field=Runner.class.getDeclaredField("i");
+  me.as.lib.minicli.FieldBinder binder=me.as.lib.minicli.FieldBinder.of(field);
+  Runner runner=new Runner();
+  int operations=10_000_000;
+
+  Bench.run("int field, FieldBinder", operations, n -> { for (int k=0;k<n;k++) binder.setInt(runner, k); });
+  Bench.run("int field, ClassExtras.setFieldValue_bruteForce", operations/10, n -> { for (int k=0;k<n;k++) ClassExtras.setFieldValue_bruteForce(runner, field, k); });
+  Bench.run("int field, plain assignment (generated parser)", operations, n -> { for (int k=0;k<n;k++) runner.i=k; });
+  Bench.sink=runner;
+ }
+
+}
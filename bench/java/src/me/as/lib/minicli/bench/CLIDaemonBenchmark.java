@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli.bench;
+
+
+import me.as.lib.minicli.CLIClient;
+import me.as.lib.minicli.CLIDaemon;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Compares the latency of a program started cold with the one of the same call made to its {@link CLIDaemon}, both from a
+ * {@link CLIClient} JVM and from inside this JVM (what a native client would get):
+ * <pre>
+ * java -cp &lt;classpath&gt; me.as.lib.minicli.bench.CLIDaemonBenchmark &lt;runs&gt; &lt;socket&gt; &lt;args...&gt; -- &lt;cold command...&gt;
+ * </pre>
+ * The daemon must be already running; stdin of the calls is empty and their output is discarded.
+ */
+public final class CLIDaemonBenchmark
+{
+
+ private CLIDaemonBenchmark(){}
+
+
+ public static void main(String args[]) throws Exception
+ {
+  int separator=Arrays.asList(args).indexOf("--");
+
+  if (args.length<3 || separator<2 || separator==args.length-1)
+  {
+   System.err.println("Usage: CLIDaemonBenchmark <runs> <socket> <args...> -- <cold command...>");
+   System.exit(1);
+  }
+
+  int runs=Integer.parseInt(args[0]);
+  Path socket=Paths.get(args[1]);
+  String callArgs[]=Arrays.copyOfRange(args, 2, separator);
+  List<String> cold=Arrays.asList(Arrays.copyOfRange(args, separator+1, args.length));
+  List<String> client=new ArrayList<>(Arrays.asList(Paths.get(System.getProperty("java.home"), "bin", "java").toString(), "-cp",
+                                                    System.getProperty("java.class.path"), CLIClient.class.getName(), socket.toString()));
+  client.addAll(Arrays.asList(callArgs));
+
+  report("cold", measure(runs, () -> runProcess(cold)));
+  report("warm, CLIClient", measure(runs, () -> runProcess(client)));
+  report("warm, in process", measure(runs, () -> CLIClient.call(socket, callArgs, System.in, OutputStream.nullOutputStream(), OutputStream.nullOutputStream())));
+ }
+
+
+ private interface Run
+ {
+  int run() throws Exception;
+ }
+
+
+ private static long[] measure(int runs, Run run) throws Exception
+ {
+  long res[]=new long[runs];
+  int t;
+
+  run.run(); // not measured: warms up the caches of the OS and of this JVM
+
+  for (t=0;t<runs;t++)
+  {
+   long start=System.nanoTime();
+   run.run();
+   res[t]=System.nanoTime()-start;
+  }
+
+  Arrays.sort(res);
+  return res;
+ }
+
+
+ private static int runProcess(List<String> command) throws Exception
+ {
+  return new ProcessBuilder(command)
+   .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+   .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+   .redirectError(ProcessBuilder.Redirect.DISCARD)
+   .start().waitFor();
+ }
+
+
+ private static void report(String what, long nanos[])
+ {
+  System.out.printf("%-18s min %8.2f ms   median %8.2f ms   p90 %8.2f ms%n", what, nanos[0]/1e6, nanos[nanos.length/2]/1e6,
+                    nanos[(int)(nanos.length*0.9)]/1e6);
+ }
+
+}
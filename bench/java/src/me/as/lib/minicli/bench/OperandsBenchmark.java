@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli.bench;
+
+
+import me.as.lib.core.report.Problems;
+import me.as.lib.minicli.CLIOption;
+import me.as.lib.minicli.CommandLineHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * How fast a long command line of mixed flags is parsed: bare boolean flags, booleans with an operand, ints, longs and doubles (see
+ * Operands):
+ * <pre>
+ * java -cp &lt;classpath&gt; me.as.lib.minicli.bench.OperandsBenchmark
+ * </pre>
+ * It uses the public API only, so it can be run against older builds too.
+ */
+public final class OperandsBenchmark
+{
+ public static final int flags=10000;
+
+
+ public static class Runner
+ {
+  @CLIOption(name="-a") public boolean a;
+  @CLIOption(name="-b") public boolean b;
+  @CLIOption(name="-c") public boolean c;
+  @CLIOption(name="-n") public int n;
+  @CLIOption(name="-l") public long l;
+  @CLIOption(name="-d") public double d;
+ }
+
+
+ private OperandsBenchmark(){}
+
+
+ public static void main(String args[]) throws Exception
+ {
+  String argv[]=mixedFlags();
+
+  Bench.run(flags+" mixed flags", 1, n ->
+  {
+   for (int k=0;k<n;k++)
+   {
+    Problems problems=new Problems();
+    Bench.sink=CommandLineHandler.prepare(Runner.class, argv, problems);
+    if (Bench.sink==null) throw new IllegalStateException(problems.toString());
+   }
+  });
+ }
+
+
+ // options can be repeated, the last value wins
+ private static String[] mixedFlags()
+ {
+  List<String> res=new ArrayList<>();
+  int t;
+
+  for (t=0;res.size()<flags;t++)
+  {
+   switch (t%7)
+   {
+    case 0: res.add("-a"); break;
+    case 1: res.add("-b"); res.add((t%2==0) ? "true" : "false"); break;
+    case 2: res.add("-c"); break;
+    case 3: res.add("-n"); res.add(String.valueOf(t)); break;
+    case 4: res.add("-l"); res.add(String.valueOf(t*1000000007L)); break;
+    case 5: res.add("-d"); res.add(t+".25"); break;
+    default: res.add("-a"); res.add("-c"); break;
+   }
+  }
+
+  return res.toArray(new String[res.size()]);
+ }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli.bench;
+
+
+import me.as.lib.core.report.Problems;
+import me.as.lib.minicli.CLIArgument;
+import me.as.lib.minicli.CLIOption;
+import me.as.lib.minicli.CLIParser;
+import me.as.lib.minicli.CommandLineHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Checks that one {@link CLIParser} (and the static prepare built on it) gives the same results when many threads use it at the same
+ * time as when a single thread does:
+ * <pre>
+ * java -cp &lt;classpath&gt; me.as.lib.minicli.bench.ParserStressTest [&lt;vectors&gt; [&lt;threads&gt;]]
+ * </pre>
+ * A few thousand different argv, valid and invalid, are parsed once by a single thread to get the expected results; then the given
+ * number of vectors (2 million by default) is parsed by the given number of threads (twice the cores by default), all sharing the same
+ * parser and the same handlers, and every result is compared with the expected one. It exits with 1 at the first mismatch.
+ */
+public final class ParserStressTest
+{
+ public static final int distinctVectors=4096;
+
+
+ public enum Mode { fast, safe, paranoid }
+
+
+ public static class Runner
+ {
+  @CLIOption(name="-n") public int n;
+  @CLIOption(name="-l") public long l;
+  @CLIOption(name="-d") public double d;
+  @CLIOption(name="-b") public boolean b;
+  @CLIOption(name="-s", aliases={"--string"}) public String s;
+  @CLIOption(name="-m") public Mode mode;
+  @CLIOption(name="-ints", separator=",") public int ints[];
+  @CLIOption(name="-names", separator=",") public String names[];
+  @CLIArgument(index=0) public List<String> files;
+
+  public String toString()
+  {
+   return n+"|"+l+"|"+d+"|"+b+"|"+s+"|"+mode+"|"+Arrays.toString(ints)+"|"+Arrays.toString(names)+"|"+files;
+  }
+ }
+
+
+ private ParserStressTest(){}
+
+
+ public static void main(String args[]) throws Exception
+ {
+  long vectors=(args.length>0 ? Long.parseLong(args[0]) : 2000000);
+  int threads=(args.length>1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors()*2));
+  CLIParser<Runner> parser=CLIParser.of(Runner.class);
+  String argvs[][]=new String[distinctVectors][];
+  String expected[]=new String[distinctVectors];
+  Random random=new Random(42);
+  int t;
+
+  // the problems too must be the same, so they are part of the result
+  for (t=0;t<distinctVectors;t++)
+  {
+   Problems problems=new Problems();
+   argvs[t]=randomArgv(random);
+   expected[t]=result(parser.parse(argvs[t], problems), problems);
+  }
+
+  AtomicLong next=new AtomicLong();
+  AtomicLong invalid=new AtomicLong();
+  ExecutorService pool=Executors.newFixedThreadPool(threads);
+  List<Future<String>> futures=new ArrayList<>();
+  long t0=System.nanoTime();
+
+  for (t=0;t<threads;t++)
+  {
+   futures.add(pool.submit(() ->
+   {
+    long k;
+
+    while ((k=next.getAndIncrement())<vectors)
+    {
+     int index=(int)(k%distinctVectors);
+     Problems problems=new Problems();
+     Runner runner=((k&1)==0 ? parser.parse(argvs[index], problems) : CommandLineHandler.prepare(Runner.class, argvs[index], problems));
+     String res=result(runner, problems);
+
+     if (runner==null) invalid.incrementAndGet();
+
+     if (!res.equals(expected[index]))
+      return "vector "+index+" "+Arrays.toString(argvs[index])+"\n expected "+expected[index]+"\n got      "+res;
+    }
+
+    return null;
+   }));
+  }
+
+  String mismatch=null;
+
+  for (Future<String> future : futures)
+  {
+   String res=future.get();
+   if (res!=null && mismatch==null) mismatch=res;
+  }
+
+  pool.shutdown();
+
+  long millis=Math.max(1, (System.nanoTime()-t0)/1000000);
+
+  if (mismatch!=null)
+  {
+   System.out.println("MISMATCH on "+mismatch);
+   System.exit(1);
+  }
+
+  System.out.printf("%d vectors (%d rejected) on %d threads in %d ms, %d vectors/s: all equal to the single thread results%n",
+   vectors, invalid.get(), threads, millis, vectors*1000/millis);
+ }
+
+
+ private static String result(Runner runner, Problems problems)
+ {
+  return (runner!=null ? runner.toString() : "null")+(problems!=null ? " "+problems : "");
+ }
+
+
+ // mostly valid, about one in ten with a bad value or an unknown option
+ private static String[] randomArgv(Random random)
+ {
+  List<String> res=new ArrayList<>();
+  int t, count=random.nextInt(12);
+
+  for (t=0;t<count;t++)
+  {
+   switch (random.nextInt(11))
+   {
+    case 0: res.add("-n"); res.add(String.valueOf(random.nextInt())); break;
+    case 1: res.add("-l"); res.add(String.valueOf(random.nextLong())); break;
+    case 2: res.add("-d"); res.add(String.valueOf(random.nextDouble()*1e6)); break;
+    case 3: res.add("-b"); if (random.nextBoolean()) res.add(String.valueOf(random.nextBoolean())); break;
+    case 4: res.add(random.nextBoolean() ? "-s" : "--string"); res.add("value"+random.nextInt(100)); break;
+    case 5: res.add("-m"); res.add(Mode.values()[random.nextInt(3)].name()); break;
+    case 6: res.add("-ints"); res.add(random.nextInt(100)+","+random.nextInt(100)+","+random.nextInt(100)); break;
+    case 7: res.add("-names"); res.add("a"+random.nextInt(10)+",b"+random.nextInt(10)); break;
+    case 8: res.add("file"+random.nextInt(1000)+".txt"); break;
+    case 9: if (random.nextInt(10)==0) { res.add("-n"); res.add("12x"); } else res.add("other"+random.nextInt(10)+".txt"); break;
+    default: if (random.nextInt(10)==0) res.add("-unknown"); else res.add("file"+t+".txt"); break;
+   }
+  }
+
+  return res.toArray(new String[res.size()]);
+ }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli.bench;
+
+
+import me.as.lib.core.report.Problems;
+import me.as.lib.minicli.CLIArgument;
+import me.as.lib.minicli.CLIOption;
+import me.as.lib.minicli.CommandLineHandler;
+
+import java.io.BufferedWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+
+/**
+ * Parses a big response file (see ResponseFileReader) whose args go to a streamed argument (an Iterator, see CLIArgument) and tells how
+ * long it took and how much heap it needed:
+ * <pre>
+ * java -Xmx64m -cp &lt;classpath&gt; me.as.lib.minicli.bench.ResponseFileBenchmark [&lt;megabytes&gt; [&lt;file&gt;]]
+ * </pre>
+ * The file (1024 MB by default, in the temp directory) is written first, if it does not exist yet. With a small -Xmx like the one above
+ * the run itself is the proof that the heap stays flat: the values of the file could never fit in it.
+ */
+public final class ResponseFileBenchmark
+{
+
+ public static class Runner
+ {
+  @CLIOption(name="-v") public boolean verbose;
+  @CLIArgument(index=0) public Iterator<String> files;
+ }
+
+
+ private ResponseFileBenchmark(){}
+
+
+ public static void main(String args[]) throws Exception
+ {
+  long megabytes=(args.length>0 ? Long.parseLong(args[0]) : 1024);
+  Path file=(args.length>1 ? Paths.get(args[1]) : Paths.get(System.getProperty("java.io.tmpdir"), "minicli-bench-"+megabytes+"MB.args"));
+
+  if (!Files.exists(file)) write(file, megabytes*1024*1024);
+
+  for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+
+  long t0=System.nanoTime();
+  Problems problems=new Problems();
+  Runner runner=CommandLineHandler.prepare(Runner.class, new String[]{"-v", "@"+file}, problems);
+
+  if (runner==null) throw new IllegalStateException(problems.toString());
+
+  long values=0, chars=0;
+
+  while (runner.files.hasNext())
+  {
+   chars+=runner.files.next().length();
+   values++;
+  }
+
+  long millis=(System.nanoTime()-t0)/1000000;
+  long peak=0;
+
+  for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+  {
+   if (pool.getType()==MemoryType.HEAP) peak+=pool.getPeakUsage().getUsed();
+  }
+
+  System.out.printf("%s: %d MB, %d values (%d chars) in %d ms, %.1f MB/s, peak heap %.1f MB of max %.1f MB%n", file.getFileName(),
+   Files.size(file)/(1024*1024), values, chars, millis, Files.size(file)/(1024.0*1024.0)/(millis/1000.0), peak/(1024.0*1024.0),
+   Runtime.getRuntime().maxMemory()/(1024.0*1024.0));
+ }
+
+
+ // paths, some of them quoted, with comments here and there
+ private static void write(Path file, long size) throws Exception
+ {
+  long written=0;
+  int t=0;
+
+  try (BufferedWriter writer=Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+  {
+   while (written<size)
+   {
+    String line;
+
+    if (t%1000==0) line="# batch "+(t/1000)+"\n";
+     else if (t%10==0) line="'/data/with spaces/file "+t+".txt'\n";
+     else line="/data/plain/dir"+(t%97)+"/file"+t+".txt\n";
+
+    writer.write(line);
+    written+=line.length();
+    t++;
+   }
+  }
+ }
+
+}
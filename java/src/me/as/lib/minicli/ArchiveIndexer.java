@@ -0,0 +1,382 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.minicli.ClassPath.Entry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+
+/**
+ * Builds the merged entry index of the archives of a {@link ClassPath}: the central directories are read, memory mapped, all the
+ * archives in parallel, and the first archive holding an entry wins, like on a classpath.
+ *
+ * <p>
+ * The index is cached, one file per list of archives, and reused while every archive keeps its size and last modified time: then no
+ * archive is opened at all. Cache files are written to a temporary file and atomically moved in place.
+ */
+final class ArchiveIndexer
+{
+ static final byte magic[]={'M', 'C', 'A', 'I'};
+ static final int version=1;
+
+
+ private ArchiveIndexer(){}
+
+
+ static ClassPath index(List<Path> roots, Path cacheDirectory) throws IOException
+ {
+  List<Path> archives=new ArrayList<>();
+  List<Integer> archiveRoots=new ArrayList<>();
+  int t, len=roots.size();
+
+  for (t=0;t<len;t++)
+  {
+   if (ClassPath.isArchive(roots.get(t)))
+   {
+    archives.add(roots.get(t).toAbsolutePath().normalize());
+    archiveRoots.add(t);
+   }
+  }
+
+  int archiveRootsArray[]=archiveRoots.stream().mapToInt(Integer::intValue).toArray();
+  long sizes[]=new long[archives.size()];
+  long modified[]=new long[archives.size()];
+
+  for (t=0;t<sizes.length;t++)
+  {
+   BasicFileAttributes attributes=Files.readAttributes(archives.get(t), BasicFileAttributes.class);
+   sizes[t]=attributes.size();
+   modified[t]=attributes.lastModifiedTime().toMillis();
+  }
+
+  Path cacheFile=(cacheDirectory!=null && archives.size()>0 ? cacheDirectory.resolve(cacheName(archives)) : null);
+  Map<String, Entry> index=(cacheFile!=null ? readCache(cacheFile, archives, sizes, modified) : null);
+
+  if (index==null)
+  {
+   List<ArchiveEntries> read=new ArrayList<>();
+
+   IntStream.range(0, archives.size()).parallel().mapToObj(a ->
+   {
+    try
+    {
+     return readCentralDirectory(archives.get(a));
+    }
+    catch (IOException ioe)
+    {
+     throw new IllegalArgumentException("Cannot read the archive '"+archives.get(a)+"': "+ioe.getMessage(), ioe);
+    }
+   }).forEachOrdered(read::add);
+
+   index=new HashMap<>();
+
+   for (t=0;t<read.size();t++)
+   {
+    ArchiveEntries entries=read.get(t);
+    int e, count=entries.names.size();
+
+    for (e=0;e<count;e++)
+     index.putIfAbsent(entries.names.get(e), new Entry(t, entries.offsets[e], entries.compressedSizes[e], entries.methods[e]));
+   }
+
+   if (cacheFile!=null) writeCache(cacheFile, archives, sizes, modified, index);
+  }
+
+  return new ClassPath(roots, archives, archiveRootsArray, index);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private static class ArchiveEntries
+ {
+  final List<String> names=new ArrayList<>();
+  long offsets[]=new long[64];
+  long compressedSizes[]=new long[64];
+  int methods[]=new int[64];
+
+  void add(String name, long offset, long compressedSize, int method)
+  {
+   int size=names.size();
+
+   if (size==offsets.length)
+   {
+    int capacity=OperandValues.grownCapacity(size);
+    offsets=Arrays.copyOf(offsets, capacity);
+    compressedSizes=Arrays.copyOf(compressedSizes, capacity);
+    methods=Arrays.copyOf(methods, capacity);
+   }
+
+   names.add(name);
+   offsets[size]=offset;
+   compressedSizes[size]=compressedSize;
+   methods[size]=method;
+  }
+ }
+
+
+ private static ArchiveEntries readCentralDirectory(Path archive) throws IOException
+ {
+  ArchiveEntries res=new ArchiveEntries();
+
+  try (FileChannel channel=FileChannel.open(archive, StandardOpenOption.READ))
+  {
+   long size=channel.size();
+   int tailLength=(int)Math.min(size, 22+0xffff);
+   ByteBuffer tail=channel.map(FileChannel.MapMode.READ_ONLY, size-tailLength, tailLength).order(ByteOrder.LITTLE_ENDIAN);
+   int eocd=tailLength-22;
+
+   while (eocd>=0 && tail.getInt(eocd)!=0x06054b50) eocd--;
+   if (eocd<0) throw new IOException("Not a zip file (no end of central directory)");
+
+   long entries=tail.getShort(eocd+10)&0xffff;
+   long cdSize=tail.getInt(eocd+12)&0xffffffffL;
+   long cdOffset=tail.getInt(eocd+16)&0xffffffffL;
+
+   if ((entries==0xffff || cdSize==0xffffffffL || cdOffset==0xffffffffL) && eocd>=20 && tail.getInt(eocd-20)==0x07064b50)
+   {
+    ByteBuffer zip64=ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN);
+    channel.read(zip64, tail.getLong(eocd-20+8));
+
+    if (zip64.getInt(0)!=0x06064b50) throw new IOException("Bad zip64 end of central directory");
+
+    entries=zip64.getLong(32);
+    cdSize=zip64.getLong(40);
+    cdOffset=zip64.getLong(48);
+   }
+
+   ByteBuffer cd=channel.map(FileChannel.MapMode.READ_ONLY, cdOffset, cdSize).order(ByteOrder.LITTLE_ENDIAN);
+   byte nameBytes[]=new byte[256];
+   int pos=0;
+   long e;
+
+   for (e=0;e<entries;e++)
+   {
+    if (cd.getInt(pos)!=0x02014b50) throw new IOException("Bad central directory entry");
+
+    int method=cd.getShort(pos+10)&0xffff;
+    long compressedSize=cd.getInt(pos+20)&0xffffffffL;
+    long uncompressedSize=cd.getInt(pos+24)&0xffffffffL;
+    int nameLength=cd.getShort(pos+28)&0xffff;
+    int extraLength=cd.getShort(pos+30)&0xffff;
+    int commentLength=cd.getShort(pos+32)&0xffff;
+    long offset=cd.getInt(pos+42)&0xffffffffL;
+
+    if (uncompressedSize==0xffffffffL || compressedSize==0xffffffffL || offset==0xffffffffL)
+    {
+     // the real values are in the zip64 extra field, only those which did not fit
+     int x=pos+46+nameLength, end=x+extraLength;
+
+     while (x+4<=end)
+     {
+      int id=cd.getShort(x)&0xffff, dataLength=cd.getShort(x+2)&0xffff, d=x+4;
+
+      if (id==0x0001)
+      {
+       if (uncompressedSize==0xffffffffL) { uncompressedSize=cd.getLong(d); d+=8; }
+       if (compressedSize==0xffffffffL) { compressedSize=cd.getLong(d); d+=8; }
+       if (offset==0xffffffffL) offset=cd.getLong(d);
+       break;
+      }
+
+      x+=4+dataLength;
+     }
+    }
+
+    if (nameLength>nameBytes.length) nameBytes=new byte[nameLength];
+    cd.position(pos+46);
+    cd.get(nameBytes, 0, nameLength);
+
+    if (nameLength>0 && nameBytes[nameLength-1]!='/')
+     res.add(new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8), offset, compressedSize, method);
+
+    pos+=46+nameLength+extraLength+commentLength;
+   }
+  }
+
+  return res;
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private static String cacheName(List<Path> archives)
+ {
+  try
+  {
+   MessageDigest digest=MessageDigest.getInstance("SHA-256");
+
+   for (Path archive : archives)
+   {
+    digest.update(archive.toString().getBytes(StandardCharsets.UTF_8));
+    digest.update((byte)0);
+   }
+
+   byte hash[]=digest.digest();
+   StringBuilder sb=new StringBuilder();
+   int t;
+
+   for (t=0;t<16;t++)
+    sb.append(Character.forDigit((hash[t]>>4)&0xf, 16)).append(Character.forDigit(hash[t]&0xf, 16));
+
+   return sb.append(".idx").toString();
+  }
+  catch (NoSuchAlgorithmException nsae)
+  {
+   throw new RuntimeException(nsae);
+  }
+ }
+
+
+ // null when missing or stale
+ private static Map<String, Entry> readCache(Path cacheFile, List<Path> archives, long sizes[], long modified[])
+ {
+  if (!Files.isRegularFile(cacheFile)) return null;
+
+  try (FileChannel channel=FileChannel.open(cacheFile, StandardOpenOption.READ))
+  {
+   ByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+   int t;
+
+   for (byte b : magic)
+   {
+    if (buffer.get()!=b) return null;
+   }
+
+   if (buffer.get()!=version || buffer.getInt()!=archives.size()) return null;
+
+   for (t=0;t<sizes.length;t++)
+   {
+    if (!readString(buffer).equals(archives.get(t).toString()) || buffer.getLong()!=sizes[t] || buffer.getLong()!=modified[t])
+     return null;
+   }
+
+   int count=buffer.getInt();
+   Map<String, Entry> res=new HashMap<>(count*4/3+1);
+
+   for (t=0;t<count;t++)
+   {
+    String name=readString(buffer);
+    res.put(name, new Entry(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getShort()&0xffff));
+   }
+
+   return (buffer.hasRemaining() ? null : res);
+  }
+  catch (IOException | RuntimeException e)
+  {
+   return null;
+  }
+ }
+
+
+ // failures are ignored: the cache is only an optimization
+ private static void writeCache(Path cacheFile, List<Path> archives, long sizes[], long modified[], Map<String, Entry> index)
+ {
+  Path temp=null;
+
+  try
+  {
+   ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+   DataOutputStream out=new DataOutputStream(bytes);
+   int t;
+
+   out.write(magic);
+   out.writeByte(version);
+   out.writeInt(archives.size());
+
+   for (t=0;t<sizes.length;t++)
+   {
+    writeString(out, archives.get(t).toString());
+    out.writeLong(sizes[t]);
+    out.writeLong(modified[t]);
+   }
+
+   out.writeInt(index.size());
+
+   for (Map.Entry<String, Entry> e : index.entrySet())
+   {
+    Entry entry=e.getValue();
+
+    writeString(out, e.getKey());
+    out.writeInt(entry.archive);
+    out.writeLong(entry.offset);
+    out.writeLong(entry.compressedSize);
+    out.writeShort(entry.method);
+   }
+
+   out.flush();
+
+   Files.createDirectories(cacheFile.getParent());
+   temp=Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+   Files.write(temp, bytes.toByteArray());
+
+   try
+   {
+    Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+   }
+   catch (AtomicMoveNotSupportedException amnse)
+   {
+    Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+   }
+
+   temp=null;
+  }
+  catch (IOException | RuntimeException ignore) {}
+  finally
+  {
+   if (temp!=null) try { Files.deleteIfExists(temp); } catch (IOException ignore) {}
+  }
+ }
+
+
+ private static void writeString(DataOutputStream out, String s) throws IOException
+ {
+  byte bytes[]=s.getBytes(StandardCharsets.UTF_8);
+  out.writeInt(bytes.length);
+  out.write(bytes);
+ }
+
+
+ private static String readString(ByteBuffer buffer)
+ {
+  byte bytes[]=new byte[buffer.getInt()];
+  buffer.get(bytes);
+  return new String(bytes, StandardCharsets.UTF_8);
+ }
+
+}
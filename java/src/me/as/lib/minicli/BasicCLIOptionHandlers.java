@@ -20,12 +20,10 @@ package me.as.lib.minicli;
 import me.as.lib.core.extra.BoxFor2;
 import me.as.lib.core.lang.ArrayExtras;
 import me.as.lib.core.lang.StringExtras;
-import me.as.lib.core.lang.Types;
 
 import java.lang.reflect.Field;
 
 import static me.as.lib.core.lang.ClassExtras.getEnumFromString;
-import static me.as.lib.core.lang.ClassExtras.setFieldValue_bruteForce;
 import static me.as.lib.core.lang.StringExtras.isNotBlank;
 import static me.as.lib.core.lang.StringExtras.replace;
 
@@ -33,10 +31,13 @@ import static me.as.lib.core.lang.StringExtras.replace;
 public class BasicCLIOptionHandlers
 {
 
+ /**
+  * All the handlers are stateless: one instance per schema is shared by every parsing, even concurrent ones,
+  * so everything an handler needs is passed to it and everything it produces is returned.
+  */
  public static class StringCLIOptionHandler implements CLIOptionHandler
  {
-  protected String operand;
-  protected String mandatoryMessage;
+  protected final String mandatoryMessage;
 
   public StringCLIOptionHandler()
   {
@@ -49,29 +50,47 @@ public class BasicCLIOptionHandlers
   }
 
 
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  /**
+   * Binds the operand (null when missing) to the field and returns how many args after the option have been consumed
+   */
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
-   setFieldValue_bruteForce(handler.getRunnerInstance(), option.element1, operand);
+   handler.setFieldValue(option, operand);
+   return 1;
   }
 
   public int handleOption(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
   {
-   try
-   {
-    operand=handler.getArgs()[argsPos+1];
-   }
-   catch (Throwable tr)
+   String operand, args[]=handler.getArgs();
+
+   if (argsPos+1<ArrayExtras.length(args))
+    operand=args[argsPos+1];
+   else
    {
     operand=null;
-    if (isNotBlank(mandatoryMessage))
-    {
-     handler.getProblems().addShowStopper(replace(mandatoryMessage, "§", option.element2.name));
-    }
+    addMandatoryMessage(handler, option);
    }
 
-   setFieldValue(handler, argsPos, option);
+   return setFieldValue(handler, argsPos, option, operand);
+  }
+
 
-   return 1;
+  /**
+   * Binds an operand which does not come from the args, like a value read from a config file (null when missing)
+   */
+  public void handleOperand(CommandLineHandler handler, BoxFor2<Field, Settings> option, String operand)
+  {
+   if (operand==null) addMandatoryMessage(handler, option);
+   setFieldValue(handler, -1, option, operand);
+  }
+
+
+  protected void addMandatoryMessage(CommandLineHandler handler, BoxFor2<Field, Settings> option)
+  {
+   if (isNotBlank(mandatoryMessage))
+   {
+    handler.getProblems().addShowStopper(replace(mandatoryMessage, "§", option.element2.name));
+   }
   }
 
  }
@@ -79,42 +98,29 @@ public class BasicCLIOptionHandlers
 
  public static class BooleanCLIOptionHandlers extends StringCLIOptionHandler
  {
-  int returnCount;
 
   public BooleanCLIOptionHandlers()
   {
    super(null);
   }
 
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  // a bare flag, unless the next arg is a boolean value (and not an option)
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
-   boolean value;
-
-   try
-   {
-    value=StringExtras.toBoolean(operand);
-    returnCount=1;
-   }
-   catch (Throwable tr)
+   if (operand!=null && handler.getSchema().getOption(operand)==null && Operands.checkBoolean(operand)==Operands.ok)
    {
-    value=true;
-    returnCount=0;
+    handler.setBooleanValue(option, Operands.parseBoolean(operand));
+    return 1;
    }
 
-   setFieldValue_bruteForce(handler.getRunnerInstance(), option.element1, value);
-  }
-
-
-  public int handleOption(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
-  {
-   super.handleOption(handler, argsPos, option);
-   return returnCount;
+   handler.setBooleanValue(option, true);
+   return 0;
   }
  }
 
  public static class EnumCLIOptionHandlers extends StringCLIOptionHandler
  {
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
    Class<Enum> enumClazz=(Class<Enum>)option.element1.getType();
 
@@ -123,7 +129,7 @@ public class BasicCLIOptionHandlers
     Enum value=getEnumFromString(enumClazz, operand);
 
     if (value!=null)
-     setFieldValue_bruteForce(handler.getRunnerInstance(), option.element1, value);
+     handler.setFieldValue(option, value);
     else
      throw new RuntimeException();
    }
@@ -132,66 +138,84 @@ public class BasicCLIOptionHandlers
     String allValues=StringExtras.mergeEnclosing(ArrayExtras.toArrayOfStrings(enumClazz.getEnumConstants()), ", ", null).substring(2);
     handler.getProblems().addShowStopper("Unknown value '"+operand+"' for option "+option.element2.name+"\nValid values are: "+allValues);
    }
+
+   return 1;
   }
  }
 
- private static void setPrimitiveFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand, Class primitiveClass)
+ private static int invalidValue(CommandLineHandler handler, BoxFor2<Field, Settings> option, String operand)
  {
-  Object value=null;
-
-  try
-  {
-   switch (ArrayExtras.select(Types.classes2, primitiveClass))
-   {
-    case 3:/* Integer.class */value=StringExtras.toInt(operand);break;
-    case 4:/* Long.class    */value=StringExtras.toLong(operand);break;
-    case 6:/* Float.class   */value=StringExtras.toFloat(operand);break;
-    case 7:/* Double.class  */value=StringExtras.toDouble(operand);break;
-    default:throw new RuntimeException();
-   }
-
-   setFieldValue_bruteForce(handler.getRunnerInstance(), option.element1, value);
-  }
-  catch (Throwable tr)
-  {
-   handler.getProblems().addShowStopper("Missing or invalid value '"+(value!=null ? value : "<null>")+"' for option "+option.element2.name);
-  }
+  handler.getProblems().addShowStopper("Missing or invalid value '"+(operand!=null ? operand : "<null>")+"' for option "+option.element2.name);
+  return 1;
  }
 
 
  public static class IntegerCLIOptionHandler extends StringCLIOptionHandler
  {
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
-   setPrimitiveFieldValue(handler, argsPos, option, operand, Integer.class);
+   if (Operands.checkInt(operand)!=Operands.ok) return invalidValue(handler, option, operand);
+
+   handler.setIntValue(option, Operands.parseInt(operand));
+   return 1;
   }
  }
 
  public static class LongCLIOptionHandler extends StringCLIOptionHandler
  {
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
-   setPrimitiveFieldValue(handler, argsPos, option, operand, Long.class);
+   if (Operands.checkLong(operand)!=Operands.ok) return invalidValue(handler, option, operand);
+
+   handler.setLongValue(option, Operands.parseLong(operand));
+   return 1;
   }
  }
 
  public static class FloatCLIOptionHandler extends StringCLIOptionHandler
  {
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
-   setPrimitiveFieldValue(handler, argsPos, option, operand, Float.class);
+   if (Operands.checkDouble(operand)!=Operands.ok) return invalidValue(handler, option, operand);
+
+   handler.setFloatValue(option, Operands.parseFloat(operand));
+   return 1;
   }
  }
 
  public static class DoubleCLIOptionHandler extends StringCLIOptionHandler
  {
 
-  protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
   {
-   setPrimitiveFieldValue(handler, argsPos, option, operand, Double.class);
+   if (Operands.checkDouble(operand)!=Operands.ok) return invalidValue(handler, option, operand);
+
+   handler.setDoubleValue(option, Operands.parseDouble(operand));
+   return 1;
   }
 
  }
 
 
+ /**
+  * For int[], long[], double[], String[] and List&lt;String&gt; fields: the operand is split on the separator of the option
+  * (see {@link CLIOption#separator()})
+  */
+ public static class ArrayCLIOptionHandler extends StringCLIOptionHandler
+ {
+  protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
+  {
+   if (operand==null) return 1;
+
+   OperandValues values=OperandValues.forField(option.element1);
+
+   if (values.addAll(operand, option.element2.separator)!=Operands.ok)
+    return invalidValue(handler, option, operand.substring(values.failedFrom, values.failedTo));
+
+   handler.setFieldValue(option, values.toFieldValue());
+   return 1;
+  }
+ }
+
+
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A compact binary config format (extension .mcfg), memory mapped when read: the value of every entry is preceded by its size in
+ * bytes, so the values of the keys which are not wanted are skipped without even being touched.
+ *
+ * <p>
+ * The layout, big endian:
+ * <pre>
+ * "MCFG" version:u8
+ * entries, until the end of the file:
+ *   keyLength:u16 key:UTF-8 kind:u8 (0=null, 1=value, 2=array) size:u32 value
+ *   value of a value: UTF-8
+ *   value of an array: count:u32 then, for every element, length:i32 (-1 for null) UTF-8
+ * </pre>
+ * Use {@link #write(Path, Map)} to produce such a file.
+ */
+public class BinaryConfigSource implements ConfigSource
+{
+ static final byte magic[]={'M', 'C', 'F', 'G'};
+ static final int version=1;
+
+ static final int kindNull=0;
+ static final int kindValue=1;
+ static final int kindArray=2;
+
+
+ public String[] extensions()
+ {
+  return new String[]{"mcfg"};
+ }
+
+
+ public void read(Path file, Set<String> keys, ConfigSink sink) throws IOException
+ {
+  MappedByteBuffer buffer;
+
+  try (FileChannel channel=FileChannel.open(file, StandardOpenOption.READ))
+  {
+   buffer=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+  }
+
+  try
+  {
+   for (byte b : magic)
+   {
+    if (buffer.get()!=b) throw new IOException("'"+file+"' is not a binary config file");
+   }
+
+   if (buffer.get()!=version) throw new IOException("Unsupported version of the binary config file '"+file+"'");
+
+   while (buffer.hasRemaining())
+   {
+    String key=readString(buffer, buffer.getShort()&0xffff);
+    int kind=buffer.get();
+    int size=buffer.getInt();
+
+    if (size<0 || size>buffer.remaining()) throw new IOException("Corrupted binary config file '"+file+"'");
+
+    if (!keys.contains(key))
+     buffer.position(buffer.position()+size);
+    else
+    {
+     switch (kind)
+     {
+      case kindNull  : sink.value(key, null); break;
+      case kindValue : sink.value(key, readString(buffer, size)); break;
+      case kindArray :
+       int t, count=buffer.getInt();
+
+       sink.arrayStart(key);
+
+       for (t=0;t<count;t++)
+       {
+        int length=buffer.getInt();
+        sink.arrayElement(key, (length<0 ? null : readString(buffer, length)));
+       }
+
+       sink.arrayEnd(key);
+       break;
+
+      default: throw new IOException("Corrupted binary config file '"+file+"'");
+     }
+    }
+   }
+  }
+  catch (BufferUnderflowException bue)
+  {
+   throw new IOException("Truncated binary config file '"+file+"'", bue);
+  }
+ }
+
+
+ private static String readString(ByteBuffer buffer, int length)
+ {
+  byte bytes[]=new byte[length];
+  buffer.get(bytes);
+  return new String(bytes, StandardCharsets.UTF_8);
+ }
+
+
+ /**
+  * Writes values as a binary config file: every value can be null, an array or a Collection (of values which are written with
+  * their toString) or anything else (written with its toString)
+  */
+ public static void write(Path file, Map<String, ?> values) throws IOException
+ {
+  ByteArrayOutputStream entry=new ByteArrayOutputStream();
+  DataOutputStream entryOut=new DataOutputStream(entry);
+
+  try (DataOutputStream out=new DataOutputStream(Files.newOutputStream(file)))
+  {
+   out.write(magic);
+   out.writeByte(version);
+
+   for (Map.Entry<String, ?> e : values.entrySet())
+   {
+    Object value=e.getValue();
+    byte key[]=e.getKey().getBytes(StandardCharsets.UTF_8);
+    int kind;
+
+    if (key.length>0xffff) throw new IOException("Key too long: "+e.getKey());
+
+    entry.reset();
+
+    if (value==null)
+     kind=kindNull;
+    else if (value.getClass().isArray() || value instanceof Collection)
+    {
+     Object elements[]=(value instanceof Collection ? ((Collection<?>)value).toArray() : toObjects(value));
+
+     kind=kindArray;
+     entryOut.writeInt(elements.length);
+
+     for (Object element : elements)
+     {
+      if (element==null)
+       entryOut.writeInt(-1);
+      else
+      {
+       byte bytes[]=element.toString().getBytes(StandardCharsets.UTF_8);
+       entryOut.writeInt(bytes.length);
+       entryOut.write(bytes);
+      }
+     }
+    }
+    else
+    {
+     kind=kindValue;
+     entryOut.write(value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    entryOut.flush();
+
+    out.writeShort(key.length);
+    out.write(key);
+    out.writeByte(kind);
+    out.writeInt(entry.size());
+    entry.writeTo(out);
+   }
+  }
+ }
+
+
+ private static Object[] toObjects(Object array)
+ {
+  int t, len=Array.getLength(array);
+  Object res[]=new Object[len];
+
+  for (t=0;t<len;t++)
+   res[t]=Array.get(array, t);
+
+  return res;
+ }
+
+}
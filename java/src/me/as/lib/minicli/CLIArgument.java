@@ -47,6 +47,12 @@ public @interface CLIArgument
   *
   * <p>
   * Multi value properties bound to arguments must always be the last entry.
+  *
+  * <p>
+  * The last entry can also be a Stream, an Iterator or an Iterable of String or of Path: then its values are not collected
+  * but produced while the program consumes them, reading the rest of the command line, response files (@file) and stdin (-).
+  * As for a List, options can still follow its values, and after -- (when it ends the options) every arg is a value; a response file
+  * met after its first value, like the rest of the one in which it starts, only gives values.
   */
  int index() default 0;
 
@@ -22,6 +22,9 @@ import me.as.lib.core.extra.BoxFor2;
 import java.lang.reflect.Field;
 
 
+/**
+ * Like for {@link CLIOptionHandler} one instance per {@link CLISchema} is shared by all the parsings of that schema
+ */
 public interface CLIArgumentHandler
 {
 
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.report.Problems;
+
+
+/**
+ * The outcome of parsing one line of a file of command lines, see {@link CLIParser#parseLines}
+ */
+public class CLIBatchResult<R>
+{
+ /**
+  * 1 based
+  */
+ public final long lineNumber;
+
+ public final String line;
+
+ /**
+  * What {@link CLIParser#parse(CharSequence, Problems)} returned for this line: null when the program should not go on (see problems)
+  */
+ public final R runner;
+
+ public final Problems problems;
+
+
+ public CLIBatchResult(long lineNumber, String line, R runner, Problems problems)
+ {
+  this.lineNumber=lineNumber;
+  this.line=line;
+  this.runner=runner;
+  this.problems=problems;
+ }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+
+/**
+ * The client of a {@link CLIDaemon}: forwards its args, working directory, environment and stdio to the daemon listening on the
+ * socket and exits with the exit code of the call.
+ * <pre>
+ * java -cp minicli.jar me.as.lib.minicli.CLIClient /tmp/mytool.sock arg1 arg2 ...
+ * </pre>
+ * It loads just a handful of classes, so it starts much faster than the program would; being a trivial protocol (see
+ * {@link DaemonFrames}) a native client can be written as well.
+ */
+public final class CLIClient
+{
+ public static final int cannotConnect=255;
+
+
+ private CLIClient(){}
+
+
+ public static void main(String args[])
+ {
+  if (args.length<1)
+  {
+   System.err.println("Usage: CLIClient <socket> [args...]");
+   System.exit(cannotConnect);
+  }
+
+  int exitCode;
+
+  try
+  {
+   exitCode=call(Paths.get(args[0]), Arrays.copyOfRange(args, 1, args.length), System.in, System.out, System.err);
+  }
+  catch (IOException ioe)
+  {
+   System.err.println("Cannot call the daemon on '"+args[0]+"': "+ioe.getMessage());
+   exitCode=cannotConnect;
+  }
+
+  System.out.flush();
+  System.exit(exitCode);
+ }
+
+
+ /**
+  * Makes a call with the working directory and the environment of this process and returns its exit code
+  */
+ public static int call(Path socket, String args[], InputStream in, OutputStream out, OutputStream err) throws IOException
+ {
+  try (SocketChannel channel=SocketChannel.open(StandardProtocolFamily.UNIX))
+  {
+   channel.connect(UnixDomainSocketAddress.of(socket));
+
+   DaemonFrames frames=new DaemonFrames(channel);
+
+   frames.write(DaemonFrames.workingDirectory, Paths.get("").toAbsolutePath().toString());
+
+   // no string concatenation here nor lambdas: bootstrapping them would cost more than all the rest of the client
+   StringBuilder sb=new StringBuilder();
+
+   for (Map.Entry<String, String> variable : System.getenv().entrySet())
+   {
+    sb.setLength(0);
+    frames.write(DaemonFrames.environment, sb.append(variable.getKey()).append('=').append(variable.getValue()).toString());
+   }
+
+   for (String arg : args)
+    frames.write(DaemonFrames.argument, arg);
+
+   frames.write(DaemonFrames.go);
+
+   for (;;)
+   {
+    byte payload[]=frames.read();
+
+    switch (frames.type())
+    {
+     case DaemonFrames.stdout: out.write(payload); break;
+     case DaemonFrames.stderr: err.write(payload); break;
+     case DaemonFrames.stdinRequest: startStdinPump(in, frames); break;
+     case DaemonFrames.exit:
+      out.flush();
+      err.flush();
+      return ((payload[0]&0xff)<<24)|((payload[1]&0xff)<<16)|((payload[2]&0xff)<<8)|(payload[3]&0xff);
+     default: throw new IOException("Unexpected frame '"+(char)frames.type()+"'");
+    }
+   }
+  }
+ }
+
+
+ private static void startStdinPump(InputStream in, DaemonFrames frames)
+ {
+  Thread pump=new Thread("minicli-client-stdin")
+  {
+   public void run()
+   {
+    byte buffer[]=new byte[64*1024];
+    int read;
+
+    try
+    {
+     while ((read=in.read(buffer))>=0)
+      if (read>0) frames.write(DaemonFrames.stdin, buffer, 0, read);
+
+     frames.write(DaemonFrames.stdin);
+    }
+    catch (IOException ignore) {}
+   }
+  };
+
+  pump.setDaemon(true);
+  pump.start();
+ }
+
+}
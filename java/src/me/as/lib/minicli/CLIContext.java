@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.report.Problems;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+
+/**
+ * Everything about one call of a {@link CLIProgram}. In a {@link CLIDaemon} the streams are the ones of the client which made the
+ * call, and so are System.in, System.out and System.err for the thread running the call (not for the threads it starts or uses); the working directory and the environment are
+ * those of the client too, but the JVM cannot switch to them: relative paths must be resolved with {@link #resolve}.
+ */
+public class CLIContext
+{
+ public final String args[];
+ public final Path workingDirectory;
+ public final Map<String, String> environment;
+ public final InputStream in;
+ public final PrintStream out;
+ public final PrintStream err;
+ public final Problems problems;
+
+
+ public CLIContext(String args[], Path workingDirectory, Map<String, String> environment, InputStream in, PrintStream out, PrintStream err,
+                   Problems problems)
+ {
+  this.args=args;
+  this.workingDirectory=workingDirectory;
+  this.environment=environment;
+  this.in=in;
+  this.out=out;
+  this.err=err;
+  this.problems=problems;
+ }
+
+
+ /**
+  * path resolved against the working directory of the call
+  */
+ public Path resolve(Path path)
+ {
+  return workingDirectory.resolve(path);
+ }
+
+ public Path resolve(String path)
+ {
+  return workingDirectory.resolve(path);
+ }
+
+}
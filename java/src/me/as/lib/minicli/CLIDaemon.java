@@ -0,0 +1,593 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.locale.Localizer;
+import me.as.lib.core.report.Problems;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs a {@link CLIProgram} in a warm JVM: the daemon listens on a Unix domain socket and every connection of a {@link CLIClient} is a
+ * call of the program, with the args, working directory, environment and stdio of the client. The runner class is parsed once, so a
+ * call costs what the program costs, not the start of a JVM plus the loading and the reflection of its classes.
+ *
+ * <pre>
+ * public static void main(String args[]) throws Exception
+ * {
+ *  if (args.length==2 &amp;&amp; args[0].equals("--daemon"))
+ *   CLIDaemon.start(Paths.get(args[1]), MyTool.class, new MyProgram(), null, CLIDaemon.defaultIdleMillis).awaitTermination();
+ *  else
+ *   System.exit(CLIDaemon.run(MyTool.class, new MyProgram(), args));
+ * }
+ * </pre>
+ *
+ * Calls run concurrently, each one on its own thread: its {@link CLIContext} has its own Problems and streams, and while it runs on that
+ * thread System.in, System.out and System.err are those of its client too; other threads working for the call must use the streams
+ * of its context. The parsing itself reads response files,
+ * config files, globs and - (stdin) from the working directory and the stdin of the client, and takes COLUMNS from its environment,
+ * but the paths are bound as the client wrote them: programs must not call System.exit, nor rely on the working directory of the JVM
+ * (see {@link CLIContext#resolve}). After idleMillis without calls the daemon closes
+ * itself. The socket file is readable and writable by its owner only from the start (it is bound in a private directory and then
+ * moved in place): whoever can connect runs the program as the daemon user.
+ * Needs Java 16 or later.
+ */
+public class CLIDaemon<R> implements Closeable
+{
+ public static final long defaultIdleMillis=30*60*1000L;
+
+
+ /**
+  * Runs program in this JVM, with the streams, working directory and environment of the process, and returns its exit code
+  */
+ public static <R> int run(Class<R> clazz, CLIProgram<R> program, String args[])
+ {
+  return run(clazz, program, null, args);
+ }
+
+ public static <R> int run(Class<R> clazz, CLIProgram<R> program, Localizer localizer, String args[])
+ {
+  CLIContext context=new CLIContext(args, Paths.get("").toAbsolutePath(), System.getenv(), System.in, System.out, System.err, new Problems());
+  return execute(clazz, program, localizer, context, false);
+ }
+
+
+ // remote when the working directory, environment and streams of the call are not those of this JVM: the parsing goes through them
+ private static <R> int execute(Class<R> clazz, CLIProgram<R> program, Localizer localizer, CLIContext context, boolean remote)
+ {
+  try
+  {
+   R runner=(remote ? CommandLineHandler.prepare(clazz, context, localizer) : CommandLineHandler.prepare(clazz, context.args, context.problems, localizer));
+   return (runner!=null ? program.run(runner, context) : program.notRun(context.problems, context));
+  }
+  catch (Throwable tr)
+  {
+   tr.printStackTrace(context.err);
+   return 1;
+  }
+  finally
+  {
+   context.out.flush();
+   context.err.flush();
+  }
+ }
+
+
+ /**
+  * Starts a daemon listening on socket (a stale socket file is replaced, a live one is an error) and returns it; it closes itself
+  * after idleMillis without calls
+  */
+ public static <R> CLIDaemon<R> start(Path socket, Class<R> clazz, CLIProgram<R> program, Localizer localizer, long idleMillis) throws IOException
+ {
+  CLIDaemon<R> res=new CLIDaemon<>(socket, clazz, program, localizer, idleMillis);
+  res.acceptor.start();
+  return res;
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final Path socket;
+ private final Class<R> clazz;
+ private final CLIProgram<R> program;
+ private final Localizer localizer;
+ private final long idleMillis;
+ private final ServerSocketChannel server;
+ private final Thread acceptor;
+ private final ExecutorService calls=Executors.newCachedThreadPool(daemonThreads("minicli-daemon-call"));
+ private final ScheduledExecutorService idleCheck=Executors.newSingleThreadScheduledExecutor(daemonThreads("minicli-daemon-idle"));
+ private final AtomicInteger running=new AtomicInteger();
+ private final CountDownLatch terminated=new CountDownLatch(1);
+ private final Thread shutdownHook=new Thread(this::close, "minicli-daemon-shutdown");
+ private volatile long lastCall=System.currentTimeMillis();
+ private volatile boolean closed=false;
+
+
+ private CLIDaemon(Path socket, Class<R> clazz, CLIProgram<R> program, Localizer localizer, long idleMillis) throws IOException
+ {
+  this.socket=socket.toAbsolutePath();
+  this.clazz=clazz;
+  this.program=program;
+  this.localizer=localizer;
+  this.idleMillis=idleMillis;
+
+  CLISchema.of(clazz); // warm from now on
+
+  removeStaleSocket();
+
+  server=ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+
+  try
+  {
+   bindPrivately();
+  }
+  catch (IOException | RuntimeException e)
+  {
+   try { server.close(); } catch (IOException ignore) {}
+   throw e;
+  }
+
+  installRoutingStreams();
+
+  // so that the socket file does not outlive a daemon stopped by a signal
+  Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+  acceptor=new Thread(this::accept, "minicli-daemon");
+
+  long period=Math.max(10, Math.min(idleMillis/4, 1000));
+  idleCheck.scheduleWithFixedDelay(this::closeIfIdle, period, period, TimeUnit.MILLISECONDS);
+ }
+
+
+ public Path getSocket()
+ {
+  return socket;
+ }
+
+
+ /**
+  * Waits until the daemon is closed, by {@link #close()} or because it has been idle
+  */
+ public void awaitTermination() throws InterruptedException
+ {
+  terminated.await();
+ }
+
+
+ /**
+  * Stops accepting calls; the running ones go on until they end
+  */
+ public void close()
+ {
+  if (closed) return;
+  closed=true;
+
+  try { server.close(); } catch (IOException ignore) {}
+  try { Files.deleteIfExists(socket); } catch (IOException ignore) {}
+  try { Runtime.getRuntime().removeShutdownHook(shutdownHook); } catch (IllegalStateException alreadyShuttingDown) {}
+
+  idleCheck.shutdown();
+  calls.shutdown();
+ }
+
+
+ private void closeIfIdle()
+ {
+  if (running.get()==0 && System.currentTimeMillis()-lastCall>=idleMillis) close();
+ }
+
+
+ /*
+  * The socket is bound in a new directory only its owner can enter, made rw for the owner only and then moved (renamed, the bound
+  * socket goes with it) where it has to be: nobody else can connect in between, whatever the umask. Where there are no POSIX
+  * permissions it is just bound in place.
+  */
+ private void bindPrivately() throws IOException
+ {
+  Path dir;
+
+  try
+  {
+   dir=Files.createTempDirectory(socket.getParent(), ".minicli-", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+  }
+  catch (UnsupportedOperationException noPosix)
+  {
+   server.bind(UnixDomainSocketAddress.of(socket));
+   return;
+  }
+
+  Path bound=dir.resolve("socket");
+
+  try
+  {
+   server.bind(UnixDomainSocketAddress.of(bound));
+   Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+   Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+  }
+  finally
+  {
+   try { Files.deleteIfExists(bound); } catch (IOException ignore) {}
+   try { Files.deleteIfExists(dir); } catch (IOException ignore) {}
+  }
+ }
+
+
+ private void removeStaleSocket() throws IOException
+ {
+  if (!Files.exists(socket)) return;
+
+  boolean live;
+
+  try
+  {
+   SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+   live=true;
+  }
+  catch (IOException ioe)
+  {
+   live=false;
+  }
+
+  if (live) throw new IOException("A daemon is already listening on '"+socket+"'");
+  Files.deleteIfExists(socket);
+ }
+
+
+ private void accept()
+ {
+  try
+  {
+   while (!closed)
+   {
+    SocketChannel channel=server.accept();
+
+    running.incrementAndGet();
+    lastCall=System.currentTimeMillis();
+
+    try
+    {
+     calls.execute(() -> serve(channel));
+    }
+    catch (RuntimeException re)
+    {
+     running.decrementAndGet();
+     try { channel.close(); } catch (IOException ignore) {}
+    }
+   }
+  }
+  catch (ClosedChannelException closedByCloseOrIdle)
+  {
+   // done
+  }
+  catch (IOException ioe)
+  {
+   ioe.printStackTrace();
+   close();
+  }
+  finally
+  {
+   try { calls.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+   terminated.countDown();
+  }
+ }
+
+
+ private void serve(SocketChannel channel)
+ {
+  try (channel)
+  {
+   DaemonFrames frames=new DaemonFrames(channel);
+   List<String> args=new ArrayList<>();
+   Map<String, String> environment=new HashMap<>();
+   Path workingDirectory=Paths.get("").toAbsolutePath();
+
+   for (byte type=0;type!=DaemonFrames.go;)
+   {
+    String payload=frames.readString();
+
+    switch (type=frames.type())
+    {
+     case DaemonFrames.workingDirectory: workingDirectory=Paths.get(payload); break;
+     case DaemonFrames.argument: args.add(payload); break;
+     case DaemonFrames.environment:
+      int eq=payload.indexOf('=');
+      if (eq>0) environment.put(payload.substring(0, eq), payload.substring(eq+1));
+      break;
+     case DaemonFrames.go: break;
+     default: throw new IOException("Unexpected frame '"+(char)type+"'");
+    }
+   }
+
+   Call call=new Call(frames);
+   CLIContext context=new CLIContext(args.toArray(new String[args.size()]), workingDirectory, environment, call.in,
+                                     new PrintStream(call.out, false), new PrintStream(call.err, false), new Problems());
+   int exitCode;
+
+   routed.set(context);
+
+   try
+   {
+    exitCode=execute(clazz, program, localizer, context, true);
+   }
+   finally
+   {
+    routed.remove();
+    context.out.flush();
+    context.err.flush();
+   }
+
+   frames.writeInt(DaemonFrames.exit, exitCode);
+  }
+  catch (IOException ioe)
+  {
+   // the client has gone away: nothing to tell anybody
+  }
+  finally
+  {
+   lastCall=System.currentTimeMillis();
+   running.decrementAndGet();
+  }
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ // the streams of a call: what it writes goes to its client in frames
+ private static class Call
+ {
+  final OutputStream out;
+  final OutputStream err;
+  final InputStream in;
+
+  Call(DaemonFrames frames)
+  {
+   out=new BufferedOutputStream(new FramesOutputStream(frames, DaemonFrames.stdout), 16*1024);
+   err=new BufferedOutputStream(new FramesOutputStream(frames, DaemonFrames.stderr), 4*1024);
+   in=new FramesInputStream(frames);
+  }
+ }
+
+
+ private static class FramesOutputStream extends OutputStream
+ {
+  private final DaemonFrames frames;
+  private final byte type;
+
+  FramesOutputStream(DaemonFrames frames, byte type)
+  {
+   this.frames=frames;
+   this.type=type;
+  }
+
+  public void write(int b) throws IOException
+  {
+   write(new byte[]{(byte)b}, 0, 1);
+  }
+
+  public void write(byte bytes[], int offset, int length) throws IOException
+  {
+   if (length>0) frames.write(type, bytes, offset, length);
+  }
+ }
+
+
+ // stdin is asked to the client only when the program reads it
+ private static class FramesInputStream extends InputStream
+ {
+  private final DaemonFrames frames;
+  private boolean requested=false;
+  private boolean ended=false;
+  private byte pending[]=new byte[0];
+  private int position=0;
+
+  FramesInputStream(DaemonFrames frames)
+  {
+   this.frames=frames;
+  }
+
+  public synchronized int read() throws IOException
+  {
+   byte b[]=new byte[1];
+   return (read(b, 0, 1)<0 ? -1 : b[0]&0xff);
+  }
+
+  public synchronized int read(byte bytes[], int offset, int length) throws IOException
+  {
+   if (length==0) return 0;
+
+   while (position==pending.length)
+   {
+    if (ended) return -1;
+
+    if (!requested)
+    {
+     requested=true;
+     frames.write(DaemonFrames.stdinRequest);
+    }
+
+    pending=frames.read();
+    position=0;
+
+    if (frames.type()!=DaemonFrames.stdin) throw new IOException("Unexpected frame '"+(char)frames.type()+"'");
+    if (pending.length==0) ended=true;
+   }
+
+   int res=Math.min(length, pending.length-position);
+   System.arraycopy(pending, position, bytes, offset, res);
+   position+=res;
+
+   return res;
+  }
+
+  public synchronized int available()
+  {
+   return pending.length-position;
+  }
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ // the call the thread is running: not inherited, a pool thread started during a call would keep writing to that client forever
+ private static final ThreadLocal<CLIContext> routed=new ThreadLocal<>();
+ private static boolean routingInstalled=false;
+
+
+ private static synchronized void installRoutingStreams()
+ {
+  if (routingInstalled) return;
+  routingInstalled=true;
+
+  PrintStream out=System.out, err=System.err;
+  InputStream in=System.in;
+
+  System.setOut(new RoutingPrintStream(out, false));
+  System.setErr(new RoutingPrintStream(err, true));
+  System.setIn(new RoutingInputStream(in));
+ }
+
+
+ // every method goes to the PrintStream of the call, so concurrent calls never wait on the lock of one shared PrintStream
+ private static class RoutingPrintStream extends PrintStream
+ {
+  private final PrintStream original;
+  private final boolean err;
+
+  RoutingPrintStream(PrintStream original, boolean err)
+  {
+   super(original, true);
+   this.original=original;
+   this.err=err;
+  }
+
+  private PrintStream target()
+  {
+   CLIContext context=routed.get();
+   return (context==null ? original : (err ? context.err : context.out));
+  }
+
+  public void write(int b) { target().write(b); }
+  public void write(byte bytes[], int offset, int length) { target().write(bytes, offset, length); }
+  public void write(byte bytes[]) throws IOException { target().write(bytes); }
+  public void writeBytes(byte bytes[]) { target().writeBytes(bytes); }
+  public void flush() { target().flush(); }
+  public void close() { target().close(); }
+  public boolean checkError() { return target().checkError(); }
+
+  public void print(boolean b) { target().print(b); }
+  public void print(char c) { target().print(c); }
+  public void print(int i) { target().print(i); }
+  public void print(long l) { target().print(l); }
+  public void print(float f) { target().print(f); }
+  public void print(double d) { target().print(d); }
+  public void print(char s[]) { target().print(s); }
+  public void print(String s) { target().print(s); }
+  public void print(Object obj) { target().print(obj); }
+
+  public void println() { target().println(); }
+  public void println(boolean x) { target().println(x); }
+  public void println(char x) { target().println(x); }
+  public void println(int x) { target().println(x); }
+  public void println(long x) { target().println(x); }
+  public void println(float x) { target().println(x); }
+  public void println(double x) { target().println(x); }
+  public void println(char x[]) { target().println(x); }
+  public void println(String x) { target().println(x); }
+  public void println(Object x) { target().println(x); }
+
+  public PrintStream printf(String format, Object... args) { target().printf(format, args); return this; }
+  public PrintStream printf(Locale l, String format, Object... args) { target().printf(l, format, args); return this; }
+  public PrintStream format(String format, Object... args) { target().format(format, args); return this; }
+  public PrintStream format(Locale l, String format, Object... args) { target().format(l, format, args); return this; }
+
+  public PrintStream append(CharSequence csq) { target().append(csq); return this; }
+  public PrintStream append(CharSequence csq, int start, int end) { target().append(csq, start, end); return this; }
+  public PrintStream append(char c) { target().append(c); return this; }
+ }
+
+
+ private static class RoutingInputStream extends InputStream
+ {
+  private final InputStream original;
+
+  RoutingInputStream(InputStream original)
+  {
+   this.original=original;
+  }
+
+  private InputStream source()
+  {
+   CLIContext context=routed.get();
+   return (context==null ? original : context.in);
+  }
+
+  public int read() throws IOException
+  {
+   return source().read();
+  }
+
+  public int read(byte bytes[], int offset, int length) throws IOException
+  {
+   return source().read(bytes, offset, length);
+  }
+
+  public int available() throws IOException
+  {
+   return source().available();
+  }
+ }
+
+
+ private static ThreadFactory daemonThreads(String name)
+ {
+  return r ->
+  {
+   Thread res=new Thread(r, name);
+   res.setDaemon(true);
+   return res;
+  };
+ }
+
+}
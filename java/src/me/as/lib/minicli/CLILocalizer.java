@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+/**
+ * To be implemented by a Localizer (usually a subclass of it) to tell the language of its texts. Then the help it renders is cached
+ * per language and the help prerendered in that language (see {@link PrerenderedTexts}) can be used: without knowing the language
+ * of a Localizer minicli renders its help every time it is asked.
+ */
+public interface CLILocalizer
+{
+
+ /**
+  * The IETF BCP 47 tag (like it or en-GB) of the language of the texts
+  */
+ String getLocaleTag();
+
+}
@@ -23,9 +23,16 @@ import me.as.lib.core.extra.BoxFor2;
 import java.lang.reflect.Field;
 
 
+/**
+ * One instance of every handler class is created per {@link CLISchema} and then shared by all the parsings of that schema, also concurrent
+ * ones: handlers must not keep anything about a parsing in their fields, the CommandLineHandler passed in is the context of the parsing.
+ */
 public interface CLIOptionHandler
 {
 
+ /**
+  * Handles the option found at argsPos and returns how many of the args following it have been consumed
+  */
  int handleOption(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option);
 
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.locale.Localizer;
+import me.as.lib.core.report.Problems;
+import me.as.lib.minicli.NumberedLinesSpliterator.NumberedLine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * A parser for the command lines of a runner class. Build it once and then call parse as many times as needed, also from many threads at
+ * the same time: all the state of a parsing lives in the {@link CommandLineHandler} created for that parsing.
+ *
+ * <pre>
+ * static final CLIParser&lt;MyTool&gt; parser=CLIParser.of(MyTool.class);
+ * ...
+ * Problems problems=new Problems();
+ * MyTool tool=parser.parse(args, problems);
+ * </pre>
+ */
+public class CLIParser<R>
+{
+
+ public static <R> CLIParser<R> of(Class<R> clazz)
+ {
+  return new CLIParser<>(clazz, null);
+ }
+
+ public static <R> CLIParser<R> of(Class<R> clazz, Localizer localizer)
+ {
+  return new CLIParser<>(clazz, localizer);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final Class<R> clazz;
+ private final CLISchema schema;
+ private final Localizer localizer;
+
+
+ public CLIParser(Class<R> clazz, Localizer localizer)
+ {
+  this.clazz=clazz;
+  this.schema=CLISchema.of(clazz);
+  this.localizer=localizer;
+ }
+
+
+ public Class<R> getRunnerClass()
+ {
+  return clazz;
+ }
+
+ public CLISchema getSchema()
+ {
+  return schema;
+ }
+
+ public Localizer getLocalizer()
+ {
+  return localizer;
+ }
+
+
+ /**
+  * Returns the configured runner instance, or null when the program should not go on (the problems tell why, if any)
+  */
+ public R parse(String args[], Problems problems)
+ {
+  return newCommandLineHandler(args, problems).createAndConfigureRunner();
+ }
+
+
+ /**
+  * Like {@link #parse(String[], Problems)} for a command line written as a single string, split like a POSIX shell would (see
+  * {@link CommandLineTokenizer}): a bad quoting is a show stopper, and a -- where an option is expected ends the options, so that all
+  * that follows are arguments. The args are looked up in the options while still in the char buffer of the split: the names of the
+  * options are never built as Strings, only the operands and the arguments are
+  */
+ public R parse(CharSequence commandLine, Problems problems)
+ {
+  CommandLineHandler<R> handler=newCommandLineHandler(commandLine, problems);
+  return (handler!=null ? handler.createAndConfigureRunner() : null);
+ }
+
+
+ /**
+  * Parses every line of a file of command lines (one command line per line, split like a POSIX shell would, see
+  * {@link CommandLineTokenizer}, see {@link #parse(CharSequence, Problems)}) in parallel.
+  *
+  * <p>
+  * The lines are read in batches while the stream is consumed, so memory stays bounded whatever the size of the file; when
+  * ordered is false results come in completion order, which is the cheapest. The returned stream must be closed, to close the file.
+  * Each line is parsed exactly like {@link #parse(CharSequence, Problems)} would do.
+  */
+ public Stream<CLIBatchResult<R>> parseLines(Path file, Charset charset, boolean ordered) throws IOException
+ {
+  BufferedReader reader=Files.newBufferedReader(file, charset);
+  Stream<NumberedLine> lines=StreamSupport.stream(new NumberedLinesSpliterator(reader), true);
+
+  if (!ordered) lines=lines.unordered();
+
+  return lines
+   .onClose(() -> { try { reader.close(); } catch (IOException ioe) { throw new UncheckedIOException(ioe); } })
+   .map(this::parseLine);
+ }
+
+
+ /**
+  * Like {@link #parseLines(Path, Charset, boolean)} but runs the parsing in the given pool and passes every result to consumer
+  * (concurrently, unless ordered is true)
+  */
+ public void parseLines(Path file, Charset charset, boolean ordered, ForkJoinPool pool, Consumer<CLIBatchResult<R>> consumer) throws IOException
+ {
+  try (Stream<CLIBatchResult<R>> results=parseLines(file, charset, ordered))
+  {
+   pool.submit(() ->
+   {
+    if (ordered) results.forEachOrdered(consumer);
+     else results.forEach(consumer);
+   }).get();
+  }
+  catch (InterruptedException ie)
+  {
+   Thread.currentThread().interrupt();
+   throw new IOException("Interrupted while parsing '"+file+"'", ie);
+  }
+  catch (ExecutionException ee)
+  {
+   Throwable cause=ee.getCause();
+   if (cause instanceof UncheckedIOException) throw ((UncheckedIOException)cause).getCause();
+   if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+   throw new RuntimeException(cause);
+  }
+ }
+
+
+ private CLIBatchResult<R> parseLine(NumberedLine line)
+ {
+  Problems problems=new Problems();
+  R runner=parse(line.text, problems);
+
+  return new CLIBatchResult<>(line.number, line.text, runner, problems);
+ }
+
+
+ CommandLineHandler<R> newCommandLineHandler(String args[], Problems problems)
+ {
+  return new CommandLineHandler<>(clazz, schema, args, problems, localizer);
+ }
+
+
+ // null, with a show stopper in problems, when the command line cannot be split
+ CommandLineHandler<R> newCommandLineHandler(CharSequence commandLine, Problems problems)
+ {
+  CommandLineTokenizer.Spans spans;
+
+  try
+  {
+   spans=CommandLineTokenizer.spans(commandLine);
+  }
+  catch (IllegalArgumentException iae)
+  {
+   problems.addShowStopper(iae.getMessage());
+   return null;
+  }
+
+  String args[]=new String[spans.count];
+  int t, len=spans.count;
+
+  for (t=0;t<len;t++)
+  {
+   String name=schema.getOptionName(spans.chars, spans.starts[t], spans.ends[t]);
+
+   if (name==null && spans.is(t, CommandLineHandler.endOfOptions)) name=CommandLineHandler.endOfOptions;
+   args[t]=(name!=null ? name : spans.toString(t));
+  }
+
+  CommandLineHandler<R> res=newCommandLineHandler(args, problems);
+  res.setDoubleDashEndsOptions(true);
+  return res;
+ }
+
+
+}
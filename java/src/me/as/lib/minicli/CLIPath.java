@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Optional, on a field which is also a {@link CLIOption} or a {@link CLIArgument} bound to paths (Path, File, String, Path[] or
+ * List&lt;Path&gt;): tells how the paths are handled and how they are validated.
+ *
+ * <pre>
+ * &#64;CLIOption(name="-in") &#64;CLIPath(sorted=true, file=true, readable=true) List&lt;Path&gt; inputs;
+ * </pre>
+ *
+ * The paths of all the validated fields are checked together once the command line has been parsed (and again after a config file
+ * has been bound), many at a time, and every failure is reported in the problems, not just the first one.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CLIPath
+{
+
+ /**
+  * Globs like data/**&#47;*.parquet are expanded walking the directories in parallel, so the paths come in the order they have been found.
+  * When true the paths matched by each glob are sorted instead, so that they are always in the same order.
+  */
+ boolean sorted() default false;
+
+ /**
+  * When true every path must exist
+  */
+ boolean mustExist() default false;
+
+ /**
+  * When true every path must exist and be readable
+  */
+ boolean readable() default false;
+
+ /**
+  * When true every path must be an existing directory
+  */
+ boolean directory() default false;
+
+ /**
+  * When true every path must be an existing regular file
+  */
+ boolean file() default false;
+
+ /**
+  * How long the check of a single path can take (think of an unresponsive network filesystem) before it is reported as failed
+  */
+ long timeoutMillis() default 10000;
+
+}
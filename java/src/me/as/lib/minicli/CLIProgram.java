@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.report.Problems;
+
+
+/**
+ * What a program does once its command line has been parsed, written so that it can run both in its own JVM and, many times and
+ * also concurrently, in the warm JVM of a {@link CLIDaemon}: everything about the call (streams, working directory, environment)
+ * comes from the context.
+ *
+ * <pre>
+ * public static void main(String args[])
+ * {
+ *  System.exit(CLIDaemon.run(MyTool.class, new MyProgram(), args));
+ * }
+ * </pre>
+ */
+public interface CLIProgram<R>
+{
+
+ /**
+  * Runs the program on the configured runner and returns its exit code
+  */
+ int run(R runner, CLIContext context) throws Exception;
+
+
+ /**
+  * Called instead of run when the parsing did not return a runner: either an option like --help has already done everything, or
+  * there are problems to report. Returns the exit code
+  */
+ default int notRun(Problems problems, CLIContext context)
+ {
+  if (problems.areThereShowStoppers())
+  {
+   context.err.println(problems);
+   return 1;
+  }
+
+  return 0;
+ }
+
+}
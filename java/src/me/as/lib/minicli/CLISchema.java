@@ -0,0 +1,589 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.extra.BoxFor2;
+import me.as.lib.core.lang.ArrayExtras;
+import me.as.lib.core.lang.ClassExtras;
+import me.as.lib.minicli.BasicCLIOptionHandlers.ArrayCLIOptionHandler;
+import me.as.lib.minicli.BasicCLIOptionHandlers.BooleanCLIOptionHandlers;
+import me.as.lib.minicli.BasicCLIOptionHandlers.DoubleCLIOptionHandler;
+import me.as.lib.minicli.BasicCLIOptionHandlers.EnumCLIOptionHandlers;
+import me.as.lib.minicli.BasicCLIOptionHandlers.FloatCLIOptionHandler;
+import me.as.lib.minicli.BasicCLIOptionHandlers.IntegerCLIOptionHandler;
+import me.as.lib.minicli.BasicCLIOptionHandlers.LongCLIOptionHandler;
+import me.as.lib.minicli.BasicCLIOptionHandlers.StringCLIOptionHandler;
+import me.as.lib.minicli.Settings.Type;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static me.as.lib.core.lang.ClassExtras.isBooleanType;
+import static me.as.lib.core.lang.ClassExtras.isDoubleType;
+import static me.as.lib.core.lang.ClassExtras.isFloatType;
+import static me.as.lib.core.lang.ClassExtras.isInstanceOf;
+import static me.as.lib.core.lang.ClassExtras.isIntegerType;
+import static me.as.lib.core.lang.ClassExtras.isLongType;
+import static me.as.lib.core.lang.StringExtras.isNotBlank;
+
+
+/**
+ * The options and arguments of a runner class, as read from its annotations (or from its generated parser, see
+ * {@link GeneratedCLIParser}).
+ *
+ * <p>
+ * A schema is built once per class and process and then shared by every {@link CommandLineHandler} parsing a command line for that class,
+ * so it must never be modified once built: everything that changes while parsing lives in the CommandLineHandler. The only thing it
+ * keeps adding is the texts rendered from it, see {@link #getRenderedHelp}.
+ */
+public final class CLISchema
+{
+ static final String commandLineHandlerField="commandLineHandler";
+ static final int maxRenderedHelps=16;
+
+ private static final ClassValue<CLISchema> schemas=new ClassValue<CLISchema>()
+ {
+  protected CLISchema computeValue(Class<?> type)
+  {
+   return new CLISchema(type);
+  }
+ };
+
+
+ public static CLISchema of(Class<?> clazz)
+ {
+  return schemas.get(clazz);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final Class<?> clazz;
+ private final GeneratedCLIParser generated;
+ private final ArrayList<BoxFor2<Field, Settings>> fieldsAndSettings=new ArrayList<>();
+ private final ArrayList<FieldBinder> binders=new ArrayList<>();
+ private final ArrayList<Object> handlers=new ArrayList<>();
+ private final HashMap<Class, Object> handlerInstances=new HashMap<>();
+ private final HashMap<String, BoxFor2<Field, Settings>> options=new HashMap<>();
+ private final HashMap<String, BoxFor2<Field, Settings>> byConfigFileKeys=new HashMap<>();
+ private final ArrayList<BoxFor2<Field, Settings>> allOptions=new ArrayList<>();
+ private final ArrayList<BoxFor2<Field, Settings>> allArguments=new ArrayList<>();
+ private final ArrayList<Settings> requiredCLIOptions=new ArrayList<>();
+ private final ArrayList<BoxFor2<Field, Settings>> validatedPaths=new ArrayList<>();
+ private int mandatoryArguments=0;
+ private final String optionNames[];
+ private final FieldBinder commandLineHandlerBinder;
+ private final ConcurrentHashMap<String, String> renderedHelps=new ConcurrentHashMap<>();
+
+
+ private CLISchema(Class<?> clazz)
+ {
+  this.clazz=clazz;
+  generated=findGeneratedParser();
+
+  if (generated!=null)
+   collectFromGeneratedParser();
+  else
+   collectByReflection();
+
+  checkStreamedArguments();
+
+  fieldsAndSettings.forEach(b2 -> { if (PathValidator.needsValidation(b2.element1)) validatedPaths.add(b2); });
+
+  optionNames=buildOptionNames(options.keySet());
+  commandLineHandlerBinder=findCommandLineHandlerBinder();
+ }
+
+
+ public Class<?> getRunnerClass()
+ {
+  return clazz;
+ }
+
+ public GeneratedCLIParser getGeneratedParser()
+ {
+  return generated;
+ }
+
+ public List<BoxFor2<Field, Settings>> getFieldsAndSettings()
+ {
+  return Collections.unmodifiableList(fieldsAndSettings);
+ }
+
+ public Map<String, BoxFor2<Field, Settings>> getOptions()
+ {
+  return Collections.unmodifiableMap(options);
+ }
+
+ public Map<String, BoxFor2<Field, Settings>> getByConfigFileKeys()
+ {
+  return Collections.unmodifiableMap(byConfigFileKeys);
+ }
+
+ public List<BoxFor2<Field, Settings>> getAllOptions()
+ {
+  return Collections.unmodifiableList(allOptions);
+ }
+
+ public List<BoxFor2<Field, Settings>> getAllArguments()
+ {
+  return Collections.unmodifiableList(allArguments);
+ }
+
+ public List<Settings> getRequiredCLIOptions()
+ {
+  return Collections.unmodifiableList(requiredCLIOptions);
+ }
+
+ /**
+  * The options and arguments whose paths are validated, see {@link CLIPath}
+  */
+ public List<BoxFor2<Field, Settings>> getValidatedPaths()
+ {
+  return Collections.unmodifiableList(validatedPaths);
+ }
+
+ public int getMandatoryArguments()
+ {
+  return mandatoryArguments;
+ }
+
+
+ /**
+  * The help rendered by renderer for the language localeTag and width, rendered only the first time. Just a few widths are ever
+  * asked, but they are not bounded: when more than {@link #maxRenderedHelps} helps have been kept they are all dropped
+  */
+ String getRenderedHelp(String localeTag, int width, Supplier<String> renderer)
+ {
+  String key=localeTag+'\u0000'+width;
+  String res=renderedHelps.get(key);
+
+  if (res==null)
+  {
+   res=renderer.get();
+   if (renderedHelps.size()>=maxRenderedHelps) renderedHelps.clear();
+   renderedHelps.put(key, res);
+  }
+
+  return res;
+ }
+
+
+ /**
+  * Writes handler into the field named commandLineHandler of runner, when its class has one
+  */
+ void bindCommandLineHandler(Object runner, CommandLineHandler handler)
+ {
+  if (generated!=null && generated.hasDirectCommandLineHandler()) generated.setCommandLineHandler(runner, handler);
+   else if (commandLineHandlerBinder!=null) commandLineHandlerBinder.set(runner, handler);
+ }
+
+
+ // resolved once per class, not needed when the generated parser writes the field directly
+ private FieldBinder findCommandLineHandlerBinder()
+ {
+  if (generated!=null && generated.hasDirectCommandLineHandler()) return null;
+
+  Field fields[]=ClassExtras.getAllFields(clazz);
+  int t, len=ArrayExtras.length(fields);
+
+  for (t=0;t<len;t++)
+  {
+   if (fields[t].getName().equals(commandLineHandlerField))
+   {
+    if (Modifier.isStatic(fields[t].getModifiers()) || !fields[t].getType().isAssignableFrom(CommandLineHandler.class))
+     return null;
+
+    return FieldBinder.of(fields[t]);
+   }
+  }
+
+  return null;
+ }
+
+
+ public FieldBinder getBinder(Settings settings)
+ {
+  return binders.get(settings.position);
+ }
+
+
+ public CLIOptionHandler getOptionHandler(BoxFor2<Field, Settings> option)
+ {
+  CLIOptionHandler res=(CLIOptionHandler)handlers.get(option.element2.position);
+
+  if (res==null)
+   throw new RuntimeException("What to do with option '"+option.element2.name+"' of type "+option.element1.getType().getName()+"?");
+
+  return res;
+ }
+
+
+ public CLIArgumentHandler getArgumentHandler(BoxFor2<Field, Settings> argument)
+ {
+  return (CLIArgumentHandler)handlers.get(argument.element2.position);
+ }
+
+
+ public BoxFor2<Field, Settings> getOption(String name)
+ {
+  if (generated!=null)
+  {
+   int position=generated.dispatch(name);
+   return (position>=0 ? fieldsAndSettings.get(position) : null);
+  }
+
+  return options.get(name);
+ }
+
+
+ /**
+  * The name (or alias) of an option which is equal to chars[from..to), null if none. No String is built to find it: the command line
+  * can be looked up while still in a char buffer, see {@link CommandLineTokenizer}
+  */
+ public String getOptionName(char chars[], int from, int to)
+ {
+  int t, h=0, mask=optionNames.length-1;
+
+  for (t=from;t<to;t++)
+   h=31*h+chars[t];
+
+  for (t=spread(h) & mask;;t=(t+1) & mask)
+  {
+   String name=optionNames[t];
+
+   if (name==null) return null;
+   if (name.hashCode()==h && regionEquals(name, chars, from, to)) return name;
+  }
+ }
+
+
+ // open addressing by String.hashCode, at most half full so that a lookup always meets an empty slot
+ private static String[] buildOptionNames(Collection<String> names)
+ {
+  int size=2;
+  while (size<names.size()*2) size<<=1;
+
+  String res[]=new String[size];
+
+  for (String name : names)
+  {
+   int t=spread(name.hashCode()) & (size-1);
+   while (res[t]!=null) t=(t+1) & (size-1);
+   res[t]=name;
+  }
+
+  return res;
+ }
+
+
+ private static int spread(int h)
+ {
+  return h^(h>>>16);
+ }
+
+
+ private static boolean regionEquals(String name, char chars[], int from, int to)
+ {
+  int t, len=name.length();
+
+  if (to-from!=len) return false;
+
+  for (t=0;t<len;t++)
+  {
+   if (name.charAt(t)!=chars[from+t]) return false;
+  }
+
+  return true;
+ }
+
+
+ public BoxFor2<Field, Settings> getByConfigFileKey(String key)
+ {
+  return byConfigFileKeys.get(key);
+ }
+
+
+ private Annotation getTheRightAnnotation(Annotation annos[])
+ {
+  return _i_getTheRightAnnotation(annos, 0);
+ }
+
+ private Annotation _i_getTheRightAnnotation(Annotation annos[], int deep)
+ {
+  if (deep>1) return null;
+
+  Annotation res=null;
+  int t, len=ArrayExtras.length(annos);
+
+  for (t=0;t<len && res==null;t++)
+  {
+   if ((annos[t] instanceof CLIOption) || (annos[t] instanceof CLIArgument))
+    res=annos[t];
+   else
+    res=_i_getTheRightAnnotation(annos[t].annotationType().getAnnotations(), deep+1);
+  }
+
+  return res;
+ }
+
+
+ private void addOption(BoxFor2<Field, Settings> option)
+ {
+  String name, all[]=ArrayExtras.append(option.element2.aliases, option.element2.name);
+  BoxFor2<Field, Settings> yet;
+  int t, len=ArrayExtras.length(all);
+
+  for (t=0;t<len;t++)
+  {
+   name=all[t];
+   if (name.startsWith(".")) name=name.substring(1);
+
+   yet=options.get(name);
+
+   if (yet==null)
+   {
+    options.put(name, option);
+   }
+   else
+    throw new RuntimeException(
+     "The option with name or alias '"+name+"' for field named '"+option.element1.getName()+
+     "' overrides the same for field named '"+yet.element1.getName()+"'");
+  }
+ }
+
+
+ private void adjustConfigFileName(BoxFor2<Field, Settings> b2)
+ {
+  if (isNotBlank(b2.element2.configFileName))
+  {
+   if ("<auto>".equals(b2.element2.configFileName))
+   {
+    b2.element2.configFileName=b2.element1.getName();
+   }
+  } else b2.element2.configFileName=null;
+ }
+
+
+ // handlers are stateless, one instance per class is enough for the whole schema
+ private Object getHandlerInstance(Class handlerClass)
+ {
+  if (handlerClass==null) return null;
+
+  Object res=handlerInstances.get(handlerClass);
+
+  if (res==null)
+  {
+   res=ClassExtras.newInstanceByClass(handlerClass);
+   handlerInstances.put(handlerClass, res);
+  }
+
+  return res;
+ }
+
+
+ private Class<? extends CLIOptionHandler> resolveOptionHandlerClass(BoxFor2<Field, Settings> option)
+ {
+  Class<? extends CLIOptionHandler> handlerClass;
+
+  if (option.element2.optionHandlerClass!=null && option.element2.optionHandlerClass!=CLIOptionHandler.class)
+   handlerClass=option.element2.optionHandlerClass;
+  else
+  {
+   Class theType=option.element1.getType();
+
+   if (isInstanceOf(option.element1.getType(), NoOperand.class))
+   {
+    if (option.element2.execAndExit) handlerClass=DoNothingAndExit.class;
+     else handlerClass=null;
+   }
+   else
+   {
+    if (theType.isEnum())
+     handlerClass=EnumCLIOptionHandlers.class;
+    else if (isBooleanType(theType))
+     handlerClass=BooleanCLIOptionHandlers.class;
+    else if (isIntegerType(theType))
+     handlerClass=IntegerCLIOptionHandler.class;
+    else if (isLongType(theType))
+     handlerClass=LongCLIOptionHandler.class;
+    else if (isFloatType(theType))
+     handlerClass=FloatCLIOptionHandler.class;
+    else if (isDoubleType(theType))
+     handlerClass=DoubleCLIOptionHandler.class;
+    else if (theType==String.class)
+     handlerClass=StringCLIOptionHandler.class;
+    else if (PathsJarsZipsHandler.supports(option.element1))
+     handlerClass=PathsJarsZipsHandler.class;
+    else if (PathHandler.supports(option.element1))
+     handlerClass=PathHandler.class;
+    else if (PathsHandler.supports(option.element1))
+     handlerClass=PathsHandler.class;
+    else if (OperandValues.supports(option.element1))
+     handlerClass=ArrayCLIOptionHandler.class;
+    else handlerClass=null;
+
+   }
+  }
+
+  return handlerClass;
+ }
+
+
+ private Class<? extends CLIArgumentHandler> resolveArgumentHandlerClass(BoxFor2<Field, Settings> argument)
+ {
+  if (argument.element2.argumentHandlerClass==CLIArgumentHandler.class)
+   return DefaultCLIArgumentHandler.class;
+
+  return argument.element2.argumentHandlerClass;
+ }
+
+
+ private GeneratedCLIParser findGeneratedParser()
+ {
+  try
+  {
+   Class<?> gc=Class.forName(clazz.getName()+GeneratedCLIParser.classNameSuffix, true, clazz.getClassLoader());
+
+   if (isInstanceOf(gc, GeneratedCLIParser.class))
+    return (GeneratedCLIParser)ClassExtras.newInstanceByClass(gc);
+  }
+  catch (ClassNotFoundException ignore){}
+
+  return null;
+ }
+
+
+ private void addFieldAndSettings(Field field, Settings settings)
+ {
+  BoxFor2<Field, Settings> b2=new BoxFor2<>(field, settings);
+  settings.position=fieldsAndSettings.size();
+  fieldsAndSettings.add(b2);
+  binders.add(FieldBinder.of(generated, settings.position, field));
+
+  if (settings.type==Type.option)
+  {
+   handlers.add(getHandlerInstance(resolveOptionHandlerClass(b2)));
+   allOptions.add(b2);
+   addOption(b2);
+
+   if (settings.required)
+    requiredCLIOptions.add(settings);
+  }
+  else
+  {
+   handlers.add(getHandlerInstance(resolveArgumentHandlerClass(b2)));
+   if (settings.required) mandatoryArguments++;
+
+   allArguments.add(b2);
+  }
+
+  adjustConfigFileName(b2);
+  byConfigFileKeys.put(b2.element2.configFileName, b2);
+ }
+
+
+ // only the last argument can take all the remaining values lazily
+ private void checkStreamedArguments()
+ {
+  int t, len=allArguments.size();
+
+  for (t=0;t<len;t++)
+  {
+   Field field=allArguments.get(t).element1;
+
+   if (StreamedValues.isStreamed(field))
+   {
+    Object elementType=StreamedValues.elementType(field);
+
+    if (t<len-1)
+     throw new RuntimeException("The argument '"+field.getName()+"' is a "+field.getType().getSimpleName()+" so it must be the last one");
+
+    if (elementType!=String.class && elementType!=Path.class)
+     throw new RuntimeException("The argument '"+field.getName()+"' can only be a "+field.getType().getSimpleName()+" of String or of Path");
+   }
+  }
+ }
+
+
+ private void collectFromGeneratedParser()
+ {
+  Class<?> declaringClasses[]=generated.declaringClasses();
+  String fieldNames[]=generated.fieldNames();
+  Settings allSettings[]=generated.settings();
+  int t, len=ArrayExtras.length(allSettings);
+
+  try
+  {
+   for (t=0;t<len;t++)
+    addFieldAndSettings(declaringClasses[t].getDeclaredField(fieldNames[t]), allSettings[t]);
+  }
+  catch (NoSuchFieldException nsfe)
+  {
+   throw new RuntimeException("The generated parser for class '"+clazz.getName()+"' is out of date, please recompile", nsfe);
+  }
+ }
+
+
+ private void collectByReflection()
+ {
+  Field fields[]=ClassExtras.getAllFields(clazz);
+  int t, len=ArrayExtras.length(fields);
+
+  for (t=0;t<len;t++)
+  {
+   Annotation anno=getTheRightAnnotation(fields[t].getAnnotations());
+
+   if (anno!=null)
+   {
+    Settings settings;
+
+    if (anno instanceof CLIOption)
+    {
+     CLIOption cliOption=(CLIOption)anno;
+
+     settings=Settings.forOption(cliOption.name(), cliOption.aliases(), cliOption.configFileName(), cliOption.usage(), cliOption.operand(),
+      cliOption.documented(), cliOption.helpOrder(), cliOption.required(), cliOption.handlerClass(), cliOption.execAndExit(),
+      cliOption.separator());
+    }
+    else
+    {
+     CLIArgument cliArgument=(CLIArgument)anno;
+
+     settings=Settings.forArgument(cliArgument.index(), cliArgument.nameInConfigFiles(), cliArgument.usage(), cliArgument.operand(),
+      cliArgument.documented(), cliArgument.required(), cliArgument.missing(), cliArgument.handlerClass(), cliArgument.execAndExit(),
+      cliArgument.separator());
+    }
+
+    addFieldAndSettings(fields[t], settings);
+   }
+  }
+ }
+
+
+}
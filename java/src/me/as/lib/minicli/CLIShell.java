@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.locale.Localizer;
+import me.as.lib.core.report.Problems;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+
+/**
+ * An interactive mode: reads command lines from the terminal (or from any reader, like a piped stdin), splits each one like a POSIX
+ * shell would (see {@link CLIParser#parse(CharSequence, Problems)}) and runs it in this JVM, parsing it with the same {@link CLIParser}, so that the schema
+ * is built once and every command after the first costs just its parsing and its run.
+ *
+ * <pre>
+ * public static void main(String args[]) throws IOException
+ * {
+ *  if (args.length==0) System.exit(CLIShell.run(MyTool.class, new MyProgram()));
+ *  System.exit(CLIDaemon.run(MyTool.class, new MyProgram(), args));
+ * }
+ * </pre>
+ *
+ * Blank lines and lines starting with # are skipped, a line which is just exit or quit (or the end of the input) ends the shell. The
+ * problems of a command are reported by {@link CLIProgram#notRun} and the shell goes on with the next one: it returns the exit code of
+ * the last command. Like in a {@link CLIDaemon}, programs must not call System.exit, and each command is parsed in its own
+ * {@link CLIContext}: --help, --version and the completion scripts print to the out of the shell, relative paths (response files,
+ * config files, globs, checked paths) are resolved against the working directory set for the shell and COLUMNS is taken from its
+ * environment.
+ */
+public class CLIShell<R>
+{
+ public static final String defaultPrompt="> ";
+ static final String exitCommands[]={"exit", "quit"};
+
+
+ /**
+  * Runs the shell on the streams of the process, with a prompt only when there is a console
+  */
+ public static <R> int run(Class<R> clazz, CLIProgram<R> program) throws IOException
+ {
+  return run(clazz, program, null);
+ }
+
+ public static <R> int run(Class<R> clazz, CLIProgram<R> program, Localizer localizer) throws IOException
+ {
+  CLIShell<R> shell=new CLIShell<>(CLIParser.of(clazz, localizer), program);
+  if (System.console()==null) shell.setPrompt(null);
+  return shell.run(new InputStreamReader(System.in), System.out, System.err);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final CLIParser<R> parser;
+ private final CLIProgram<R> program;
+ private String prompt=defaultPrompt;
+ private Path workingDirectory=Paths.get("").toAbsolutePath();
+ private Map<String, String> environment=System.getenv();
+
+
+ public CLIShell(CLIParser<R> parser, CLIProgram<R> program)
+ {
+  this.parser=parser;
+  this.program=program;
+ }
+
+
+ public CLIParser<R> getParser()
+ {
+  return parser;
+ }
+
+ public String getPrompt()
+ {
+  return prompt;
+ }
+
+ /**
+  * null for no prompt
+  */
+ public void setPrompt(String prompt)
+ {
+  this.prompt=prompt;
+ }
+
+ /**
+  * The directory the relative paths of the commands are resolved against, by default the one of the JVM
+  */
+ public void setWorkingDirectory(Path workingDirectory)
+ {
+  this.workingDirectory=workingDirectory;
+ }
+
+ public void setEnvironment(Map<String, String> environment)
+ {
+  this.environment=environment;
+ }
+
+
+ /**
+  * Runs every command line read from in, until the end of it or exit/quit, and returns the exit code of the last command (0 if none).
+  * Programs get an empty stdin, since in belongs to the shell
+  */
+ public int run(Reader in, PrintStream out, PrintStream err) throws IOException
+ {
+  BufferedReader reader=(in instanceof BufferedReader ? (BufferedReader)in : new BufferedReader(in));
+  int exitCode=0;
+  String line;
+
+  while (true)
+  {
+   if (prompt!=null)
+   {
+    out.print(prompt);
+    out.flush();
+   }
+
+   if ((line=reader.readLine())==null) break;
+
+   String trimmed=line.trim();
+
+   if (trimmed.isEmpty() || trimmed.charAt(0)=='#') continue;
+   if (isExitCommand(trimmed)) break;
+
+   exitCode=execute(line, out, err);
+  }
+
+  return exitCode;
+ }
+
+
+ /**
+  * Parses and runs a single command line, returning its exit code
+  */
+ public int execute(CharSequence commandLine, PrintStream out, PrintStream err)
+ {
+  Problems problems=new Problems();
+  CommandLineHandler<R> handler=parser.newCommandLineHandler(commandLine, problems);
+  CLIContext context=new CLIContext((handler!=null ? handler.getArgs() : new String[0]), workingDirectory, environment,
+   InputStream.nullInputStream(), out, err, problems);
+
+  if (handler!=null) handler.setContext(context);
+
+  try
+  {
+   R runner=(handler!=null ? handler.createAndConfigureRunner() : null);
+   return (runner!=null ? program.run(runner, context) : program.notRun(problems, context));
+  }
+  catch (Throwable tr)
+  {
+   tr.printStackTrace(err);
+   return 1;
+  }
+  finally
+  {
+   out.flush();
+   err.flush();
+  }
+ }
+
+
+ private static boolean isExitCommand(String line)
+ {
+  int t, len=exitCommands.length;
+
+  for (t=0;t<len;t++)
+  {
+   if (exitCommands[t].equals(line)) return true;
+  }
+
+  return false;
+ }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Makes a runner class a subcommand (a verb, like import in "tool import ...") of a tool, see {@link CLISubcommands}.
+ *
+ * <pre>
+ * &#64;CLISubcommand(of=Tool.class, name="import", usage="imports the files into the archive")
+ * public class ImportCommand
+ * {
+ *  &#64;CLIOption(name="-in") Path in;
+ *  ...
+ * }
+ * </pre>
+ *
+ * The annotation processor (the processor module) collects the subcommands of every tool in an index, so that at runtime only the
+ * class of the chosen subcommand is loaded. The index is rewritten at every compilation with the subcommands compiled in it, so they
+ * must always be compiled together (like a full Maven or Gradle build does).
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface CLISubcommand
+{
+
+ /**
+  * The tool this is a subcommand of: any class, usually the one with the main method
+  */
+ Class<?> of();
+
+ /**
+  * The verb, like "import"
+  */
+ String name();
+
+ /**
+  * Other verbs for the same subcommand, like "imp"
+  */
+ String[] aliases() default {};
+
+ /**
+  * One line telling what the subcommand does, shown by the help of the tool. Like for {@link CLIOption#usage()}, when it is a single
+  * word starting with § it is a key for the Localizer
+  */
+ String usage() default "";
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.locale.Localizer;
+import me.as.lib.core.report.Problems;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static me.as.lib.core.lang.StringExtras.isBlank;
+import static me.as.lib.core.lang.StringExtras.isNotBlank;
+
+
+/**
+ * The subcommands (verbs) of a tool, like import and export in "tool import -in x" and "tool export -out y", each one with its own
+ * runner class annotated with {@link CLISubcommand}.
+ *
+ * <pre>
+ * public static void main(String args[])
+ * {
+ *  Problems problems=new Problems();
+ *  Object runner=CLISubcommands.prepare(Tool.class, args, problems);
+ *  ...
+ * }
+ * </pre>
+ *
+ * The verbs come from the index META-INF/minicli/&lt;tool class&gt;/subcommands which the annotation processor writes at compile time:
+ * only the runner class of the chosen verb is loaded, so startup does not grow with the number of verbs, and the help of the
+ * tool (tool --help) lists the verbs without loading any of them. "tool --help verb" is the same as "tool verb --help".
+ */
+public final class CLISubcommands
+{
+ static final String subcommandsResource="subcommands";
+ public static final String useHelp="Use --help to learn the subcommands of this program.";
+
+
+ /**
+  * A line of the index
+  */
+ public static final class Subcommand
+ {
+  public final String name;
+  public final List<String> aliases;
+  public final String className;
+  public final String usage;
+
+  Subcommand(String name, List<String> aliases, String className, String usage)
+  {
+   this.name=name;
+   this.aliases=aliases;
+   this.className=className;
+   this.usage=usage;
+  }
+ }
+
+
+ private static final ClassValue<CLISubcommands> byTool=new ClassValue<CLISubcommands>()
+ {
+  protected CLISubcommands computeValue(Class<?> type)
+  {
+   return new CLISubcommands(type);
+  }
+ };
+
+
+ /**
+  * The subcommands of tool, read once from its index: empty when there is none
+  */
+ public static CLISubcommands of(Class<?> tool)
+ {
+  return byTool.get(tool);
+ }
+
+
+ public static Object prepare(Class<?> tool, String args[], Problems problems)
+ {
+  return of(tool).prepare(args, problems, null);
+ }
+
+ public static Object prepare(Class<?> tool, String args[], Problems problems, Localizer localizer)
+ {
+  return of(tool).prepare(args, problems, localizer);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final Class<?> tool;
+ private final List<Subcommand> subcommands;
+ private final Map<String, Subcommand> byVerb;
+
+
+ private CLISubcommands(Class<?> tool)
+ {
+  List<Subcommand> list=new ArrayList<>();
+  Map<String, Subcommand> map=new HashMap<>();
+  String index=PrerenderedTexts.readResource(tool, subcommandsResource);
+
+  if (index!=null)
+  {
+   for (String line : index.split("\n"))
+   {
+    String fields[]=line.split("\t", -1);
+    if (fields.length<4) continue;
+
+    List<String> aliases=(fields[2].isEmpty() ? Collections.emptyList() : Arrays.asList(fields[2].split(",")));
+    Subcommand subcommand=new Subcommand(fields[0], aliases, fields[1], unescape(fields[3]));
+
+    list.add(subcommand);
+    map.put(subcommand.name, subcommand);
+    for (String alias : aliases) map.put(alias, subcommand);
+   }
+  }
+
+  this.tool=tool;
+  this.subcommands=Collections.unmodifiableList(list);
+  this.byVerb=map;
+ }
+
+
+ // the reverse of CLIParserProcessor.escape
+ private static String unescape(String text)
+ {
+  if (text.indexOf('\\')<0) return text;
+
+  StringBuilder sb=new StringBuilder(text.length());
+  int t, len=text.length();
+
+  for (t=0;t<len;t++)
+  {
+   char c=text.charAt(t);
+
+   if (c=='\\' && t+1<len)
+   {
+    c=text.charAt(++t);
+    if (c=='n') c='\n';
+   }
+
+   sb.append(c);
+  }
+
+  return sb.toString();
+ }
+
+
+ public Class<?> getTool()
+ {
+  return tool;
+ }
+
+ /**
+  * In the order of the index
+  */
+ public List<Subcommand> getSubcommands()
+ {
+  return subcommands;
+ }
+
+ /**
+  * The subcommand having verb as name or alias, null if none
+  */
+ public Subcommand get(String verb)
+ {
+  return byVerb.get(verb);
+ }
+
+
+ /**
+  * Loads (only now) the runner class of subcommand
+  */
+ public Class<?> loadRunnerClass(Subcommand subcommand)
+ {
+  ClassLoader loader=tool.getClassLoader();
+
+  try
+  {
+   return Class.forName(subcommand.className, true, (loader!=null ? loader : ClassLoader.getSystemClassLoader()));
+  }
+  catch (ClassNotFoundException cnfe)
+  {
+   throw new IllegalStateException("The subcommand '"+subcommand.name+"' of '"+tool.getName()+"' is indexed as class '"+
+    subcommand.className+"', which cannot be found: the index is stale, rebuild the program", cnfe);
+  }
+ }
+
+
+ /**
+  * args[0] is the verb and the rest is parsed for the runner class of that verb (see {@link CommandLineHandler#prepare}), which is
+  * the runner instance returned. Returns null when the program should not go on: no verb or an unknown one (the problems tell so),
+  * or the help of the tool has been printed
+  */
+ public Object prepare(String args[], Problems problems, Localizer localizer)
+ {
+  if (args==null || args.length==0)
+  {
+   problems.addShowStopper("A subcommand is required\n"+useHelp);
+   return null;
+  }
+
+  String verb=args[0];
+  int from=1;
+
+  if (isHelp(verb))
+  {
+   if (args.length==1 || get(args[1])==null)
+   {
+    System.out.print(help(localizer, HelpHandler.getTerminalColumns()-2));
+    System.out.flush();
+    return null;
+   }
+
+   // tool --help verb
+   args=new String[]{args[1], verb};
+   verb=args[0];
+  }
+
+  Subcommand subcommand=get(verb);
+
+  if (subcommand==null)
+  {
+   problems.addShowStopper("Unknown subcommand '"+verb+"'\n"+useHelp);
+   return null;
+  }
+
+  return CommandLineHandler.prepare(loadRunnerClass(subcommand), Arrays.copyOfRange(args, from, args.length), problems, localizer);
+ }
+
+
+ /**
+  * The verbs with their aliases and usages, wrapped at width: no runner class is loaded
+  */
+ public String help(Localizer localizer, int width)
+ {
+  String newLine=System.lineSeparator();
+  StringBuilder sb=new StringBuilder(256+subcommands.size()*80);
+
+  for (Subcommand subcommand : subcommands)
+  {
+   sb.append(subcommand.name);
+   for (String alias : subcommand.aliases) sb.append(" | ").append(alias);
+   sb.append(newLine);
+
+   String usage=HelpHandler.getLocalized(localizer, subcommand.usage);
+   if (isNotBlank(usage)) HelpHandler.wrap(usage, HelpHandler.usagePadding, width, sb);
+   sb.append(newLine).append(newLine);
+  }
+
+  String programName=System.getProperty(CompletionHandler.programNameProperty);
+  if (isBlank(programName)) programName=tool.getSimpleName().toLowerCase(Locale.ROOT);
+
+  sb.append("Use '").append(programName).append(" <subcommand> --help' to learn how to use a subcommand.").append(newLine);
+
+  return sb.toString();
+ }
+
+
+ private static String helpNames[]=null;
+
+ // the names and aliases of HelpCLIOption
+ private static boolean isHelp(String arg)
+ {
+  String names[]=helpNames;
+
+  if (names==null)
+  {
+   CLIOption help=HelpCLIOption.class.getAnnotation(CLIOption.class);
+   List<String> list=new ArrayList<>();
+
+   list.add(help.name());
+   for (String alias : help.aliases()) list.add(alias.startsWith(".") ? alias.substring(1) : alias);
+
+   helpNames=names=list.toArray(new String[list.size()]);
+  }
+
+  return Arrays.asList(names).contains(arg);
+ }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * A classpath like value: directories, jars and zips, in order. The entries of all the archives are indexed once (see
+ * {@link PathsJarsZipsHandler}), so a resource is found and opened without opening any other archive than the one holding it.
+ */
+public class ClassPath
+{
+ /**
+  * The system property naming the directory where the archive indexes are cached; when it is empty they are not cached.
+  * Defaults to minicli-archive-index in java.io.tmpdir
+  */
+ public static final String cacheDirectoryProperty="minicli.archiveIndexCache";
+
+
+ public static Path getCacheDirectory()
+ {
+  String dir=System.getProperty(cacheDirectoryProperty);
+
+  if (dir==null) return Paths.get(System.getProperty("java.io.tmpdir"), "minicli-archive-index");
+  if (dir.isEmpty()) return null;
+  return Paths.get(dir);
+ }
+
+
+ static class Entry
+ {
+  final int archive;
+  final long offset;
+  final long compressedSize;
+  final int method;
+
+  Entry(int archive, long offset, long compressedSize, int method)
+  {
+   this.archive=archive;
+   this.offset=offset;
+   this.compressedSize=compressedSize;
+   this.method=method;
+  }
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final List<Path> roots;
+ private final List<Path> archives;
+ private final int archiveRoots[];
+ private final Map<String, Entry> index;
+
+
+ ClassPath(List<Path> roots, List<Path> archives, int archiveRoots[], Map<String, Entry> index)
+ {
+  this.roots=roots;
+  this.archives=archives;
+  this.archiveRoots=archiveRoots;
+  this.index=index;
+ }
+
+
+ public List<Path> getRoots()
+ {
+  return Collections.unmodifiableList(roots);
+ }
+
+ public List<Path> getArchives()
+ {
+  return Collections.unmodifiableList(archives);
+ }
+
+ public int getIndexedEntries()
+ {
+  return index.size();
+ }
+
+
+ /**
+  * The root (directory or archive) holding the resource, the first one in order, or null
+  */
+ public Path locate(String name)
+ {
+  Entry entry=index.get(name);
+  int t, before=(entry!=null ? archiveRoots[entry.archive] : roots.size());
+
+  // directories are not indexed, they are looked into only when they come before the archive holding it
+  for (t=0;t<before;t++)
+  {
+   Path root=roots.get(t);
+   if (!isArchive(root) && Files.exists(root.resolve(name), LinkOption.NOFOLLOW_LINKS)) return root;
+  }
+
+  return (entry!=null ? archives.get(entry.archive) : null);
+ }
+
+
+ /**
+  * Opens the resource, null if there is no such resource
+  */
+ public InputStream open(String name) throws IOException
+ {
+  Path root=locate(name);
+
+  if (root==null) return null;
+  if (!isArchive(root)) return Files.newInputStream(root.resolve(name));
+
+  Entry entry=index.get(name);
+
+  try (FileChannel channel=FileChannel.open(root, StandardOpenOption.READ))
+  {
+   ByteBuffer header=ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+   channel.read(header, entry.offset);
+
+   if (header.getInt(0)!=0x04034b50) throw new IOException("Bad local header for '"+name+"' in '"+root+"'");
+
+   long dataStart=entry.offset+30+(header.getShort(26)&0xffff)+(header.getShort(28)&0xffff);
+   MappedByteBuffer data=channel.map(FileChannel.MapMode.READ_ONLY, dataStart, entry.compressedSize);
+   InputStream res=new ByteBufferInputStream(data);
+
+   switch (entry.method)
+   {
+    case 0 : return res;
+    case 8 : return new InflaterInputStream(res, new Inflater(true));
+    default: throw new IOException("Unsupported compression method "+entry.method+" for '"+name+"' in '"+root+"'");
+   }
+  }
+ }
+
+
+ static boolean isArchive(Path path)
+ {
+  String name=path.getFileName().toString().toLowerCase();
+  return ((name.endsWith(".jar") || name.endsWith(".zip")) && !Files.isDirectory(path));
+ }
+
+
+ /**
+  * The roots separated by File.pathSeparator, as for -cp
+  */
+ public String toString()
+ {
+  StringBuilder sb=new StringBuilder();
+
+  for (Path root : roots)
+  {
+   if (sb.length()>0) sb.append(File.pathSeparator);
+   sb.append(root);
+  }
+
+  return sb.toString();
+ }
+
+
+ private static class ByteBufferInputStream extends InputStream
+ {
+  private final ByteBuffer buffer;
+
+  ByteBufferInputStream(ByteBuffer buffer)
+  {
+   this.buffer=buffer;
+  }
+
+  public int read()
+  {
+   return (buffer.hasRemaining() ? buffer.get()&0xff : -1);
+  }
+
+  public int read(byte bytes[], int offset, int length)
+  {
+   if (length==0) return 0;
+   if (!buffer.hasRemaining()) return -1;
+
+   length=Math.min(length, buffer.remaining());
+   buffer.get(bytes, offset, length);
+   return length;
+  }
+
+  public int available()
+  {
+   return buffer.remaining();
+  }
+ }
+
+}
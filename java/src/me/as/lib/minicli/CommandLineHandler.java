@@ -18,14 +18,7 @@
 package me.as.lib.minicli;
 
 
-import jdk.nashorn.api.scripting.ScriptObjectMirror;
-import me.as.lib.core.StillUnimplemented;
-import me.as.lib.minicli.BasicCLIOptionHandlers.BooleanCLIOptionHandlers;
-import me.as.lib.minicli.BasicCLIOptionHandlers.DoubleCLIOptionHandler;
-import me.as.lib.minicli.BasicCLIOptionHandlers.EnumCLIOptionHandlers;
-import me.as.lib.minicli.BasicCLIOptionHandlers.FloatCLIOptionHandler;
-import me.as.lib.minicli.BasicCLIOptionHandlers.IntegerCLIOptionHandler;
-import me.as.lib.minicli.BasicCLIOptionHandlers.LongCLIOptionHandler;
+import me.as.lib.minicli.BasicCLIOptionHandlers.ArrayCLIOptionHandler;
 import me.as.lib.minicli.BasicCLIOptionHandlers.StringCLIOptionHandler;
 import me.as.lib.minicli.Settings.Type;
 import me.as.lib.core.extra.BoxFor2;
@@ -36,31 +29,30 @@ import me.as.lib.core.locale.Localizer;
 import me.as.lib.core.report.Problem;
 import me.as.lib.core.report.Problems;
 
-import java.lang.annotation.Annotation;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
-
-import static me.as.lib.core.lang.ClassExtras.isBooleanType;
-import static me.as.lib.core.lang.ClassExtras.isDoubleType;
-import static me.as.lib.core.lang.ClassExtras.isFloatType;
-import static me.as.lib.core.lang.ClassExtras.isInstanceOf;
-import static me.as.lib.core.lang.ClassExtras.isIntegerType;
-import static me.as.lib.core.lang.ClassExtras.isLongType;
+
 import static me.as.lib.core.lang.ClassExtras.mapAllFields;
 import static me.as.lib.core.lang.StringExtras.hasChars;
 import static me.as.lib.core.lang.StringExtras.isNotBlank;
-import static me.as.lib.core.lang.StringExtras.parseJson;
 import static me.as.lib.core.system.FileSystemExtras.isFile;
-import static me.as.lib.core.system.FileSystemExtras.loadTextFromFile;
 
 
 public class CommandLineHandler<R>
 {
  public static final String useHelp = "Use --help to learn how to use this program.";
+ static final String endOfOptions="--";
 
  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
@@ -74,41 +66,77 @@ public class CommandLineHandler<R>
   return prepare(clazz, args,  problems, null);
  }
 
+ /**
+  * Returns the configured runner instance, or null when the program should not go on. When args is just --help or -version (or one
+  * of their aliases) and their texts have been prerendered at build time (see {@link PrerenderedTexts}) they are printed straight
+  * away, without even looking at the fields of clazz
+  */
  public static <R> R prepare(Class<R> clazz, String args[], Problems problems, Localizer localizer)
  {
-  CommandLineHandler<R> clh=new CommandLineHandler<>(clazz, args, problems, localizer);
-  clh.createAndConfigureRunner();
-  return clh.cliInstance;
+  if (PrerenderedTexts.print(clazz, args, localizer, null)) return null;
+  return CLIParser.of(clazz, localizer).parse(args, problems);
+ }
+
+
+ public static <R> R prepare(Class<R> clazz, CharSequence commandLine, Problems problems)
+ {
+  return prepare(clazz, commandLine, problems, null);
+ }
+
+ /**
+  * Like {@link #prepare(Class, String[], Problems, Localizer)} for a command line written as a single string, see
+  * {@link CLIParser#parse(CharSequence, Problems)}
+  */
+ public static <R> R prepare(Class<R> clazz, CharSequence commandLine, Problems problems, Localizer localizer)
+ {
+  return CLIParser.of(clazz, localizer).parse(commandLine, problems);
+ }
+
+
+ // the args of a call with its own working directory, environment and streams, see CLIDaemon
+ static <R> R prepare(Class<R> clazz, CLIContext context, Localizer localizer)
+ {
+  if (PrerenderedTexts.print(clazz, context.args, localizer, context)) return null;
+
+  CommandLineHandler<R> handler=CLIParser.of(clazz, localizer).newCommandLineHandler(context.args, context.problems);
+  handler.setContext(context);
+  return handler.createAndConfigureRunner();
  }
 
  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
  private Class<R> clazz;
+ private CLISchema schema;
  private R cliInstance=null;
  private Object realRunnerInstance=null;
+ private IdentityHashMap<Settings, BoxFor2<Field, Settings>> realRunnerFields=null;
+ private IdentityHashMap<Settings, FieldBinder> realRunnerBinders=null;
  private String args[];
  private Problems problems;
  private Localizer localizer;
- private List<BoxFor2> fieldsAndSettings;
- private HashMap<String, BoxFor2<Field, Settings>> options=new HashMap<>();
- private HashMap<String, BoxFor2<Field, Settings>> byConfigFileKeys=new HashMap<>();
- private ArrayList<BoxFor2<Field, Settings>> allOptions=new ArrayList<>();
- private ArrayList<BoxFor2<Field, Settings>> allArguments=new ArrayList<>();
- private ArrayList<BoxFor2<Field, Settings>> allOfAll=new ArrayList<>();
+ private CLIContext context=null;
  private boolean shouldExit=false;
  private boolean configFileWasSpecified=false;
+ private boolean stopParsing=false;
+ private boolean doubleDashEndsOptions=false;
+ private boolean optionsEnded=false;
  private int numberOfPassedOptions=0;
  private int numberOfPassedArguments=0;
- private int mandatoryArguments=0;
- private List<Settings> requiredCLIOptions=new ArrayList<>();
+ private List<Settings> requiredCLIOptions;
+ private List<Settings> multiValueArguments=new ArrayList<>();
+ private BoxFor2<Field, Settings> streamedArgument=null;
+ private StreamedValues streamedValues=null;
+ private List<BoxFor2<Field, Settings>> boundFromConfigFile=new ArrayList<>();
 
 
- private CommandLineHandler(Class<R> clazz, String args[], Problems problems, Localizer localizer)
+ CommandLineHandler(Class<R> clazz, CLISchema schema, String args[], Problems problems, Localizer localizer)
  {
   this.clazz=clazz;
+  this.schema=schema;
   this.args=args;
   this.problems=problems;
   this.localizer=localizer;
+  this.requiredCLIOptions=new ArrayList<>(schema.getRequiredCLIOptions());
  }
 
 
@@ -118,20 +146,86 @@ public class CommandLineHandler<R>
  }
 
 
+ /**
+  * The call being parsed when its working directory, environment and streams are not those of this JVM (like for a {@link CLIDaemon}),
+  * otherwise null
+  */
+ public CLIContext getContext()
+ {
+  return context;
+ }
+
+ void setContext(CLIContext context)
+ {
+  this.context=context;
+ }
+
+
+ /**
+  * path resolved against the working directory of the call (see {@link #getContext()}), or path itself when parsing for this JVM:
+  * handlers reading files must go through this
+  */
+ public Path resolvePath(Path path)
+ {
+  return (context==null ? path : context.resolve(path));
+ }
+
+ public Path resolvePath(String path)
+ {
+  return resolvePath(Paths.get(path));
+ }
+
+ /**
+  * The environment variable of the call, or of this JVM
+  */
+ public String getEnvironmentVariable(String name)
+ {
+  return (context==null ? System.getenv(name) : context.environment.get(name));
+ }
+
+ /**
+  * Where handlers read what is read from stdin, like the values of a streamed argument
+  */
+ public InputStream getIn()
+ {
+  return (context==null ? System.in : context.in);
+ }
+
+ /**
+  * Where handlers print what they print, like the help or the version
+  */
+ public PrintStream getOut()
+ {
+  return (context==null ? System.out : context.out);
+ }
+
+
  public Object getRunnerInstance()
  {
   if (realRunnerInstance!=null) return realRunnerInstance;
   return cliInstance;
  }
 
+ public CLISchema getSchema()
+ {
+  return schema;
+ }
+
  public List<BoxFor2<Field, Settings>> getAllOptions()
  {
-  return allOptions;
+  return schema.getAllOptions();
  }
 
  public List<BoxFor2<Field, Settings>> getAllArguments()
  {
-  return allArguments;
+  return schema.getAllArguments();
+ }
+
+
+ // a -- where an option is expected makes all the following args arguments, also when they look like options
+ void setDoubleDashEndsOptions(boolean doubleDashEndsOptions)
+ {
+  this.doubleDashEndsOptions=doubleDashEndsOptions;
  }
 
 
@@ -161,171 +255,282 @@ public class CommandLineHandler<R>
  }
 
 
- private Annotation getTheRightAnnotation(Annotation annos[])
+ /**
+  * Tells that, in this execution, the argument accepts more than one value
+  */
+ public void setMultiValue(BoxFor2<Field, Settings> argument)
  {
-  return _i_getTheRightAnnotation(annos, 0);
+  if (!multiValueArguments.contains(argument.element2))
+   multiValueArguments.add(argument.element2);
  }
 
- private Annotation _i_getTheRightAnnotation(Annotation annos[], int deep)
+ public boolean isMultiValue(BoxFor2<Field, Settings> argument)
  {
-  if (deep>1) return null;
+  return multiValueArguments.contains(argument.element2);
+ }
 
-  Annotation res=null;
-  int t, len=ArrayExtras.length(annos);
 
-  for (t=0;t<len && res==null;t++)
+ public FieldBinder getBinder(BoxFor2<Field, Settings> b2)
+ {
+  if (realRunnerBinders!=null)
   {
-   if ((annos[t] instanceof CLIOption) || (annos[t] instanceof CLIArgument))
-    res=annos[t];
-   else
-    res=_i_getTheRightAnnotation(annos[t].annotationType().getAnnotations(), deep+1);
+   FieldBinder res=realRunnerBinders.get(b2.element2);
+   if (res!=null) return res;
   }
 
-  return res;
+  return schema.getBinder(b2.element2);
  }
 
 
- private void addOption(BoxFor2<Field, Settings> option)
+ public void setFieldValue(BoxFor2<Field, Settings> b2, Object value)
  {
-  String name, all[]=ArrayExtras.append(option.element2.aliases, option.element2.name);
-  BoxFor2<Field, Settings> yet;
-  int t, len=ArrayExtras.length(all);
+  getBinder(b2).set(getRunnerInstance(), value);
+ }
 
-  for (t=0;t<len;t++)
-  {
-   name=all[t];
-   if (name.startsWith(".")) name=name.substring(1);
+ public void setIntValue(BoxFor2<Field, Settings> b2, int value)
+ {
+  getBinder(b2).setInt(getRunnerInstance(), value);
+ }
 
-   yet=options.get(name);
+ public void setLongValue(BoxFor2<Field, Settings> b2, long value)
+ {
+  getBinder(b2).setLong(getRunnerInstance(), value);
+ }
 
-   if (yet==null)
-   {
-    options.put(name, option);
-   }
-   else
-    throw new RuntimeException(
-     "The option with name or alias '"+name+"' for field named '"+option.element1.getName()+
-     "' overrides the same for field named '"+yet.element1.getName()+"'");
-  }
+ public void setFloatValue(BoxFor2<Field, Settings> b2, float value)
+ {
+  getBinder(b2).setFloat(getRunnerInstance(), value);
+ }
+
+ public void setDoubleValue(BoxFor2<Field, Settings> b2, double value)
+ {
+  getBinder(b2).setDouble(getRunnerInstance(), value);
  }
 
+ public void setBooleanValue(BoxFor2<Field, Settings> b2, boolean value)
+ {
+  getBinder(b2).setBoolean(getRunnerInstance(), value);
+ }
 
- private CLIOptionHandler getHandler(BoxFor2<Field, Settings> option)
+
+ public Object getFieldValue(BoxFor2<Field, Settings> b2)
  {
-  CLIOptionHandler res;
-  Class<? extends CLIOptionHandler> handlerClass;
+  return getBinder(b2).get(getRunnerInstance());
+ }
 
-  if (option.element2.optionHandlerClass!=null && option.element2.optionHandlerClass!=CLIOptionHandler.class)
-   handlerClass=option.element2.optionHandlerClass;
-  else
+
+ // when configuring by file a runner of another class the fields are the same named ones of that class
+ private BoxFor2<Field, Settings> forRunner(BoxFor2<Field, Settings> b2)
+ {
+  if (b2!=null && realRunnerFields!=null)
   {
-   Class theType=option.element1.getType();
+   BoxFor2<Field, Settings> res=realRunnerFields.get(b2.element2);
+   if (res!=null) return res;
+  }
+
+  return b2;
+ }
+
+
+ private void setArgument(BoxFor2<Field, Settings> b2, int argsPos)
+ {
+  schema.getArgumentHandler(b2).handleArgument(this, argsPos, b2);
+ }
+
 
-   if (isInstanceOf(option.element1.getType(), NoOperand.class))
+ // handles the arg at argsPos and returns how many of the following args have been consumed too
+ private int parseArg(int argsPos)
+ {
+  List<BoxFor2<Field, Settings>> allArguments=schema.getAllArguments();
+  String arg=args[argsPos];
+  BoxFor2<Field, Settings> option=(optionsEnded ? null : forRunner(schema.getOption(arg)));
+  int res=0;
+
+  if (option==null) // then its an arugment
+  {
+   if (streamedValues!=null)
+    streamedValues.add(arg);
+   else if (allArguments.size()>0)
    {
-    if (option.element2.execAndExit) handlerClass=DoNothingAndExit.class;
-     else throw new RuntimeException("What to do with this option?");
+    try
+    {
+     BoxFor2<Field, Settings> b2;
+
+     if (numberOfPassedArguments>=allArguments.size())
+     {
+      b2=forRunner(allArguments.get(allArguments.size()-1));
+      if (!isMultiValue(b2))
+       throw new RuntimeException("Too many values passed for argument");
+
+     }
+     else
+      b2=forRunner(allArguments.get(numberOfPassedArguments));
+
+     if (StreamedValues.isStreamed(b2.element1))
+     {
+      // this and the following non option args are its values, see bindStreamedArgument
+      streamedArgument=b2;
+      streamedValues=new StreamedValues(getIn());
+      streamedValues.add(arg);
+     }
+     else
+      setArgument(b2, argsPos);
+
+     numberOfPassedArguments++;
+    }
+    catch (Throwable tr)
+    {
+     problems.addShowStopper("Invalid arguments or options\n"+useHelp);
+    }
    }
    else
    {
-    if (theType.isEnum())
-     handlerClass=EnumCLIOptionHandlers.class;
-    else if (isBooleanType(theType))
-     handlerClass=BooleanCLIOptionHandlers.class;
-    else if (isIntegerType(theType))
-     handlerClass=IntegerCLIOptionHandler.class;
-    else if (isLongType(theType))
-     handlerClass=LongCLIOptionHandler.class;
-    else if (isFloatType(theType))
-     handlerClass=FloatCLIOptionHandler.class;
-    else if (isDoubleType(theType))
-     handlerClass=DoubleCLIOptionHandler.class;
-    else if (theType==String.class)
-     handlerClass=StringCLIOptionHandler.class;
-    else handlerClass=null;
-
+    problems.addShowStopper("invalid option '"+arg+"'\n"+useHelp);
+    stopParsing=true;
    }
   }
-
-  res=ClassExtras.newInstanceByClass(handlerClass);
+  else
+  {
+   res=schema.getOptionHandler(option).handleOption(this, argsPos, option);
+   optionHandled(option);
+  }
 
   return res;
  }
 
 
- private void setArgument(BoxFor2<Field, Settings> b2, int argsPos)
+ private void optionHandled(BoxFor2<Field, Settings> option)
  {
-  CLIArgumentHandler handler;
+  requiredCLIOptions.remove(option.element2);
+  numberOfPassedOptions++;
 
-  if (b2.element2.argumentHandlerClass==CLIArgumentHandler.class)
-   handler=new DefaultCLIArgumentHandler();
-  else
-   handler=ClassExtras.newInstanceByClass(b2.element2.argumentHandlerClass);
+  shouldExit=option.element2.execAndExit || problems.areThereShowStoppers();
+ }
 
-  handler.handleArgument(this, argsPos, b2);
+
+ private boolean isResponseFile(String arg)
+ {
+  return (arg.length()>1 && arg.charAt(0)=='@' && schema.getOption(arg)==null);
  }
 
 
- private void parseUserArgs(boolean fromConfigFile)
+ // the args of the response file pass through a small window, big enough for what handlers look ahead, so they can be as many as needed
+ private void parseResponseFile(String path)
  {
-  BoxFor2<Field, Settings> option;
-  String arg;
-  int t, len=ArrayExtras.length(args);
+  String saved[]=args;
+  String windows[][]={new String[1], new String[2], new String[3]};
+  ResponseFileReader reader=null;
 
-  for (t=0;t<len && !shouldExit;t++)
+  try
   {
-   arg=args[t];
+   String arg;
+   int t, consumed;
+   boolean streaming=false;
 
-   option=options.get(arg);
+   reader=new ResponseFileReader(resolvePath(path));
 
-   if (option==null) // then its an arugment
+   while (!shouldExit && !stopParsing && !streaming && (arg=reader.next())!=null)
    {
-    if (allArguments.size()>0)
-    {
-     try
-     {
-      BoxFor2<Field, Settings> b2;
+    int available=(reader.peek(0)==null ? 0 : (reader.peek(1)==null ? 1 : 2));
 
-      if (t>=allArguments.size())
-      {
-       b2=allArguments.get(allArguments.size()-1);
-       if (!b2.element2.isMultiValue)
-        throw new RuntimeException("Too many values passed for argument");
+    args=windows[available];
+    args[0]=arg;
+    for (t=0;t<available;t++) args[t+1]=reader.peek(t);
 
-      }
-      else
-       b2=allArguments.get(numberOfPassedArguments);
+    consumed=parseArg(0);
 
-      setArgument(b2, t);
-
-      numberOfPassedArguments++;
-     }
-     catch (Throwable tr)
-     {
-      problems.addShowStopper("Invalid arguments or options\n"+useHelp);
-     }
-    }
-    else
+    if (streamedValues!=null)
     {
-     problems.addShowStopper("invalid option '"+arg+"'\n"+useHelp);
-     return;
+     // from now on the rest of the file belongs to the streamed argument
+     streamedValues.followedBy(reader);
+     reader=null;
+     streaming=true;
     }
+    else
+     for (t=0;t<consumed;t++) reader.next();
    }
-   else
-   {
-    t+=getHandler(option).handleOption(this, t, option);
-    requiredCLIOptions.remove(option.element2);
-    numberOfPassedOptions++;
+  }
+  catch (IOException ioe)
+  {
+   problems.addShowStopper("Cannot read the response file '"+path+"': "+ioe.getMessage());
+  }
+  finally
+  {
+   args=saved;
+   if (reader!=null) try { reader.close(); } catch (IOException ignore) {}
+  }
+ }
+
+
+ // @@something is the arg @something
+ private void parseEscapedArg(int argsPos)
+ {
+  String saved[]=args;
+
+  try
+  {
+   args=new String[]{saved[argsPos].substring(1)};
+   parseArg(0);
+  }
+  finally
+  {
+   args=saved;
+  }
+ }
+
+
+ private void parseUserArgs(boolean fromConfigFile)
+ {
+  String arg;
+  int t, len=ArrayExtras.length(args);
+
+  for (t=0;t<len && !shouldExit && !stopParsing;t++)
+  {
+   arg=args[t];
 
-    shouldExit=option.element2.execAndExit || problems.areThereShowStoppers();
+   if (optionsEnded)
+    t+=parseArg(t);
+   else if (doubleDashEndsOptions && endOfOptions.equals(arg) && schema.getOption(arg)==null)
+    optionsEnded=true;
+   else if (!fromConfigFile && isResponseFile(arg))
+   {
+    if (arg.charAt(1)=='@')
+     parseEscapedArg(t);
+    else if (streamedValues!=null)
+     streamedValues.addResponseFile(resolvePath(arg.substring(1)));
+    else
+     parseResponseFile(arg.substring(1));
    }
+   else
+    t+=parseArg(t);
   }
 
+  if (stopParsing) return;
+
+  if (streamedValues!=null) bindStreamedArgument();
+
   if (!fromConfigFile && numberOfPassedOptions>1 && configFileWasSpecified)
   {
    problems.addShowStopper("No other options can be specified if a config file has been passed");
   }
 
+  validatePaths();
+  checkRequiredOptions();
+ }
+
+
+ // in one batch, see PathValidator
+ private void validatePaths()
+ {
+  if (!shouldExit && !schema.getValidatedPaths().isEmpty())
+   PathValidator.validate(schema.getValidatedPaths(), b2 -> getFieldValue(forRunner(b2)), this::resolvePath, problems);
+ }
+
+
+ private void checkRequiredOptions()
+ {
+  int t, len;
+
   if (!shouldExit && (len=requiredCLIOptions.size())>0)
   {
    for (t=0;t<len;t++)
@@ -336,86 +541,16 @@ public class CommandLineHandler<R>
  }
 
 
-
- private void adjustConfigFileName(BoxFor2<Field, Settings> b2)
+ // the values are not read here, not even the first one: - would wait for stdin
+ private void bindStreamedArgument()
  {
-  if (isNotBlank(b2.element2.configFileName))
-  {
-   if ("<auto>".equals(b2.element2.configFileName))
-   {
-    b2.element2.configFileName=b2.element1.getName();
-   }
-  } else b2.element2.configFileName=null;
+  setFieldValue(streamedArgument, streamedValues.as(streamedArgument.element1));
  }
 
 
- private void createAndConfigureRunner()
+ R createAndConfigureRunner()
  {
   cliInstance=ClassExtras.newInstanceByClass(clazz);
-  fieldsAndSettings=new ArrayList<>();
-
-  Field fields[]=ClassExtras.getAllFields(clazz);
-  int t, len=ArrayExtras.length(fields);
-
-  for (t=0;t<len;t++)
-  {
-   Annotation anno=getTheRightAnnotation(fields[t].getAnnotations());
-
-   if (anno!=null)
-   {
-    Settings settings=new Settings();
-    BoxFor2<Field, Settings> b2=new BoxFor2<>(fields[t], settings);
-    fieldsAndSettings.add(b2);
-
-    if (anno instanceof CLIOption)
-    {
-     allOptions.add(b2);
-     CLIOption cliOption=(CLIOption)anno;
-     settings.type=Type.option;
-
-     settings.name=cliOption.name();
-     settings.aliases=cliOption.aliases();
-     addOption(b2);
-
-     settings.configFileName=cliOption.configFileName();
-     settings.usage=cliOption.usage();
-     settings.operand=cliOption.operand();
-     settings.documented=cliOption.documented();
-     settings.helpOrder=cliOption.helpOrder();
-     settings.required=cliOption.required();
-     settings.optionHandlerClass=cliOption.handlerClass();
-     settings.execAndExit=cliOption.execAndExit();
-     settings.separator=cliOption.separator();
-
-     if (settings.required)
-      requiredCLIOptions.add(settings);
-    }
-    else
-    {
-     CLIArgument cliArgument=(CLIArgument)anno;
-     settings.type=Type.argument;
-
-     settings.index=cliArgument.index();
-     settings.configFileName=cliArgument.nameInConfigFiles();
-     settings.usage=cliArgument.usage();
-     settings.operand=cliArgument.operand();
-     settings.documented=cliArgument.documented();
-     settings.required=cliArgument.required();
-     settings.missing=cliArgument.missing();
-     settings.argumentHandlerClass=cliArgument.handlerClass();
-     settings.execAndExit=cliArgument.execAndExit();
-     settings.separator=cliArgument.separator();
-
-     if (settings.required) mandatoryArguments++;
-
-     allArguments.add(b2);
-    }
-
-    allOfAll.add(b2);
-    adjustConfigFileName(b2);
-    byConfigFileKeys.put(b2.element2.configFileName, b2);
-   }
-  }
 
   parseUserArgs(false);
 
@@ -423,11 +558,11 @@ public class CommandLineHandler<R>
    cliInstance=null;
   else
   {
-   if (numberOfPassedArguments<mandatoryArguments)
+   if (numberOfPassedArguments<schema.getMandatoryArguments())
    {
     problems.addShowStopper("Missing mandatory arguments!");
 
-    allArguments.forEach(a ->
+    schema.getAllArguments().forEach(a ->
     {
      if (a.element2.required && isNotBlank(a.element2.missing))
       problems.add(Problem.Type.none, a.element2.missing);
@@ -437,95 +572,341 @@ public class CommandLineHandler<R>
    }
   }
 
+  if (cliInstance==null && streamedValues!=null)
+   streamedValues.close();
+
   if (cliInstance!=null)
-   try{ ClassExtras.setFieldValue_bruteForce(cliInstance, "commandLineHandler", this); }catch(Throwable ignore){}
+   schema.bindCommandLineHandler(cliInstance, this);
+
+  return cliInstance;
  }
 
 
  private void updateAllFields()
  {
+  realRunnerFields=new IdentityHashMap<>();
+  realRunnerBinders=new IdentityHashMap<>();
+
   mapAllFields(realRunnerInstance.getClass(),
    map ->
-    allOfAll.forEach(
+    schema.getFieldsAndSettings().forEach(
      b2 ->
-      b2.element1=map.get(b2.element1.getName())
+     {
+      Field field=map.get(b2.element1.getName());
+      realRunnerFields.put(b2.element2, new BoxFor2<>(field, b2.element2));
+      if (!b2.element1.equals(field)) realRunnerBinders.put(b2.element2, FieldBinder.of(field));
+     }
     )
   );
  }
 
 
 
- @SuppressWarnings("removal")
+ /**
+  * Reads the config file (its format is chosen by its extension, see {@link ConfigSource}) and binds its values, for the keys which are known, to the fields of realRunner (which can be of a
+  * different class than the one of this handler: its fields with the same names are used).
+  * Returns false if the file cannot be read or is not valid (the problems tell why)
+  */
  public boolean configureByFile(Object realRunner, String configFilePath)
  {
-  if (isFile(configFilePath))
+  String resolved=resolvedConfigFile(configFilePath);
+
+  if (isFile(resolved))
   {
+   int passedBefore=numberOfPassedOptions;
+
+   realRunnerInstance=realRunner;
+   updateAllFields();
+
    try
    {
-    ArrayList<String> largs=new ArrayList<>();
-    Map<String, Object> parsed=parseJson(loadTextFromFile(configFilePath));
+    Path file=Paths.get(resolved);
+    ConfigSources.forFile(file).read(file, schema.getByConfigFileKeys().keySet(), new ConfigFileBinder());
+   }
+   catch (Throwable tr)
+   {
+    problems.addShowStopper("Exception while reading the config file '"+configFilePath+"'\n"+ExceptionExtras.getDeepCauseStackTrace(tr));
+    return false;
+   }
 
-    for (String key : parsed.keySet())
-    {
-     BoxFor2<Field, Settings> b2=byConfigFileKeys.get(key);
+   if (numberOfPassedOptions>passedBefore)
+   {
+    validatePaths();
+    checkRequiredOptions();
+   }
 
-     if (b2!=null)
-     {
-      if (b2.element2.type==Type.argument) throw new StillUnimplemented();
+   return true;
+  }
+  else
+  {
+   if (numberOfPassedOptions>0)
+   {
+    problems.addShowStopper("The config file '"+configFilePath+"' is not a file or cannot be read");
+   }
 
-      Object oValue=parsed.get(key);
+   return false;
+  }
+ }
 
-      if (oValue instanceof ScriptObjectMirror)
-      {
-       final StringBuilder sb=new StringBuilder();
-       final ScriptObjectMirror som=(ScriptObjectMirror)oValue;
-       String oKeys[]=som.getOwnKeys(false);
 
-       Arrays.asList(oKeys).forEach(
-       k ->
-       {
-        int okInt=Integer.parseInt(k); // otherwise exception rises and that's what I want
-        if (sb.length()>0) sb.append(";");
-        sb.append(som.get(k).toString());
-       });
+ // binds the values straight through the handlers, as if they were in the args
+ private void bindConfigValue(BoxFor2<Field, Settings> b2, String value)
+ {
+  if (shouldExit) return;
+  if (b2.element2.type==Type.argument)
+  {
+   bindConfigArgument(b2, value);
+   return;
+  }
 
-       oValue=sb.toString();
-      }
+  BoxFor2<Field, Settings> option=forRunner(b2);
+  CLIOptionHandler optionHandler=schema.getOptionHandler(option);
 
-      String value=oValue!=null ? oValue.toString() : null;
+  if (!hasChars(value)) value=null;
 
-      largs.add(b2.element2.name);
-      if (hasChars(value)) largs.add(value);
-     }
-    }
+  if (optionHandler instanceof StringCLIOptionHandler)
+   ((StringCLIOptionHandler)optionHandler).handleOperand(this, option, value);
+  else
+  {
+   String saved[]=args;
 
-    if (largs.size()>0)
-    {
-     args=ArrayExtras.toArrayOfStrings(largs);
-     realRunnerInstance=realRunner;
-     updateAllFields();
-     parseUserArgs(true);
-    }
+   try
+   {
+    args=(value!=null ? new String[]{option.element2.name, value} : new String[]{option.element2.name});
+    optionHandler.handleOption(this, 0, option);
    }
-   catch (Throwable tr)
+   finally
    {
-    problems.addShowStopper("Exception while reading the config file '"+configFilePath+"'\n"+ExceptionExtras.getDeepCauseStackTrace(tr));
-    return false;
+    args=saved;
    }
+  }
 
-   return true;
+  boundFromConfigFile.add(b2);
+  optionHandled(option);
+ }
+
+
+ private void bindConfigArgument(BoxFor2<Field, Settings> b2, String value)
+ {
+  BoxFor2<Field, Settings> argument=forRunner(b2);
+
+  if (value==null) return;
+
+  if (OperandValues.supports(argument.element1))
+  {
+   OperandValues values=OperandValues.forField(argument.element1);
+
+   if (values.addAll(value, argument.element2.separator)!=Operands.ok)
+   {
+    invalidConfigValue(b2, value.substring(values.failedFrom, values.failedTo));
+    return;
+   }
+
+   setFieldValue(argument, values.toFieldValue());
   }
   else
+   handleArgumentValue(argument, value);
+
+  boundFromConfigFile.add(b2);
+  numberOfPassedArguments++;
+ }
+
+
+ private void handleArgumentValue(BoxFor2<Field, Settings> argument, String value)
+ {
+  String saved[]=args;
+
+  try
   {
-   if (numberOfPassedOptions>0)
+   args=new String[]{value};
+   schema.getArgumentHandler(argument).handleArgument(this, 0, argument);
+  }
+  finally
+  {
+   args=saved;
+  }
+ }
+
+
+ private void invalidConfigValue(BoxFor2<Field, Settings> b2, String value)
+ {
+  problems.addShowStopper("Missing or invalid value '"+(value!=null ? value : "<null>")+"' for '"+b2.element2.configFileName+"' in the config file");
+  shouldExit=true;
+ }
+
+
+ // against the working directory of the call, if any: as it is when it is not a path at all, isFile tells
+ private String resolvedConfigFile(String configFilePath)
+ {
+  try
+  {
+   return (configFilePath==null || context==null ? configFilePath : context.resolve(configFilePath).toString());
+  }
+  catch (InvalidPathException ipe)
+  {
+   return configFilePath;
+  }
+ }
+
+
+ /**
+  * Like {@link #configureByFile(Object, String)} but keeps in cacheDirectory a binary snapshot of the values bound from the config
+  * file, already converted: the next runs with the same config file (same size, last modified time and content) and the same
+  * runner classes bind the values straight from the snapshot. The cache directory can be shared by many processes.
+  * A null cacheDirectory disables the cache.
+  */
+ public boolean configureByFile(Object realRunner, String configFilePath, Path cacheDirectory)
+ {
+  String resolved=resolvedConfigFile(configFilePath);
+
+  if (cacheDirectory==null || !isFile(resolved))
+   return configureByFile(realRunner, configFilePath);
+
+  Path file=Paths.get(resolved);
+  long size, modified;
+  byte hash[];
+
+  try
+  {
+   BasicFileAttributes attributes=Files.readAttributes(file, BasicFileAttributes.class);
+   size=attributes.size();
+   modified=attributes.lastModifiedTime().toMillis();
+   hash=ConfigSnapshot.contentHash(file);
+  }
+  catch (IOException ioe)
+  {
+   return configureByFile(realRunner, configFilePath);
+  }
+
+  realRunnerInstance=realRunner;
+  updateAllFields();
+
+  ConfigSnapshot snapshot=new ConfigSnapshot(cacheDirectory, file, schema, realRunner.getClass());
+  int passedBefore=numberOfPassedOptions;
+
+  boolean loaded=snapshot.load(size, modified, hash, (value, position) ->
+  {
+   BoxFor2<Field, Settings> option=forRunner(schema.getFieldsAndSettings().get(position));
+   setFieldValue(option, value);
+   optionHandled(option);
+  });
+
+  if (loaded)
+  {
+   if (numberOfPassedOptions>passedBefore)
    {
-    problems.addShowStopper("The config file '"+configFilePath+"' is not a file or cannot be read");
+    validatePaths();
+    checkRequiredOptions();
    }
-
-   return false;
+   return true;
   }
+
+  boundFromConfigFile.clear();
+  boolean res=configureByFile(realRunner, configFilePath);
+
+  if (res && !problems.areThereShowStoppers())
+   snapshot.store(boundFromConfigFile, b2 -> getFieldValue(forRunner(b2)), size, modified, hash);
+
+  return res;
  }
 
 
+ /*
+  * Arrays are bound element by element while they are read: into the array or List field itself when it is an argument, or an
+  * option with the default handler, and through the argument handler for the other arguments. Only options with a custom handler
+  * get their elements joined with the separator, to be split by the handler.
+  */
+ private class ConfigFileBinder implements ConfigSink
+ {
+  private BoxFor2<Field, Settings> array;
+  private OperandValues values;
+  private StringBuilder joined;
+  private String separator;
+  private int count;
+
+
+  public void value(String key, String value)
+  {
+   bindConfigValue(schema.getByConfigFileKey(key), value);
+  }
+
+
+  public void arrayStart(String key)
+  {
+   array=schema.getByConfigFileKey(key);
+   values=null;
+   joined=null;
+   count=0;
+
+   if (shouldExit) return;
+
+   BoxFor2<Field, Settings> target=forRunner(array);
+   boolean isArgument=(array.element2.type==Type.argument);
+
+   if (OperandValues.supports(target.element1) && (isArgument || schema.getOptionHandler(target) instanceof ArrayCLIOptionHandler))
+    values=OperandValues.forField(target.element1);
+   else if (!isArgument)
+   {
+    joined=new StringBuilder();
+    separator=joinSeparator(target);
+   }
+  }
+
+
+  // what the handler splits on: the declared separator, File.pathSeparator for path lists, ; for anything else
+  private String joinSeparator(BoxFor2<Field, Settings> target)
+  {
+   if (hasChars(target.element2.separator)) return target.element2.separator;
+
+   CLIOptionHandler handler=schema.getOptionHandler(target);
+   return (handler instanceof PathsHandler || handler instanceof PathsJarsZipsHandler ? File.pathSeparator : ";");
+  }
+
+
+  public void arrayElement(String key, String value)
+  {
+   if (shouldExit) return;
+
+   if (values!=null)
+   {
+    if (value==null || values.add(value, 0, value.length())!=Operands.ok)
+     invalidConfigValue(array, value);
+   }
+   else if (joined!=null)
+   {
+    if (count>0) joined.append(separator);
+    joined.append(value);
+   }
+   else if (value!=null)
+    handleArgumentValue(forRunner(array), value);
+
+   count++;
+  }
+
+
+  public void arrayEnd(String key)
+  {
+   if (shouldExit) return;
+
+   if (joined!=null)
+   {
+    bindConfigValue(array, joined.toString());
+    return;
+   }
+
+   BoxFor2<Field, Settings> target=forRunner(array);
+
+   if (values!=null)
+    setFieldValue(target, values.toFieldValue());
+
+   boundFromConfigFile.add(array);
+
+   if (array.element2.type==Type.option)
+    optionHandled(target);
+   else if (count>0)
+    numberOfPassedArguments++;
+  }
+ }
+
 
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Splits a command line written as a single string into its args, the way a POSIX shell would:
+ * <ul>
+ * <li>args are separated by blanks (spaces, tabs, new lines)</li>
+ * <li>inside single quotes everything is taken literally</li>
+ * <li>inside double quotes a backslash escapes only ", \, $ and `</li>
+ * <li>elsewhere a backslash escapes any character</li>
+ * <li>outside single quotes a backslash followed by a new line is a line continuation, both are dropped</li>
+ * </ul>
+ * No variable, glob or command expansion is done. The split is made in a single pass into one char buffer (see {@link Spans}), so
+ * that the parser can look at the args without building a String for each one.
+ */
+public class CommandLineTokenizer
+{
+
+ /**
+  * The args of a command line, unescaped and one after the other in chars: the arg i is chars[starts[i]..ends[i])
+  */
+ static final class Spans
+ {
+  final char chars[];
+  int starts[]=new int[8];
+  int ends[]=new int[8];
+  int count=0;
+
+  Spans(int capacity)
+  {
+   chars=new char[capacity];
+  }
+
+  void add(int start, int end)
+  {
+   if (count==starts.length)
+   {
+    starts=Arrays.copyOf(starts, count*2);
+    ends=Arrays.copyOf(ends, count*2);
+   }
+
+   starts[count]=start;
+   ends[count]=end;
+   count++;
+  }
+
+  boolean is(int index, String what)
+  {
+   int t, from=starts[index], len=what.length();
+
+   if (ends[index]-from!=len) return false;
+
+   for (t=0;t<len;t++)
+   {
+    if (chars[from+t]!=what.charAt(t)) return false;
+   }
+
+   return true;
+  }
+
+  String toString(int index)
+  {
+   return new String(chars, starts[index], ends[index]-starts[index]);
+  }
+ }
+
+
+ public static String[] tokenize(CharSequence commandLine)
+ {
+  Spans spans=spans(commandLine);
+  String res[]=new String[spans.count];
+  int t, len=spans.count;
+
+  for (t=0;t<len;t++)
+   res[t]=spans.toString(t);
+
+  return res;
+ }
+
+
+ // unescaping never makes the text longer, so the command line length is enough for chars
+ static Spans spans(CharSequence commandLine)
+ {
+  int t, len=commandLine.length();
+  Spans res=new Spans(len);
+  char chars[]=res.chars;
+  int w=0, start=-1;
+  char quote=0;
+
+  for (t=0;t<len;t++)
+  {
+   char c=commandLine.charAt(t);
+
+   if (quote=='\'')
+   {
+    if (c=='\'') quote=0;
+     else chars[w++]=c;
+   }
+   else if (quote=='"')
+   {
+    if (c=='"')
+     quote=0;
+    else if (c=='\\' && t+1<len && commandLine.charAt(t+1)=='\n')
+     t++;
+    else if (c=='\\' && t+1<len && "\"\\$`".indexOf(commandLine.charAt(t+1))>=0)
+     chars[w++]=commandLine.charAt(++t);
+    else
+     chars[w++]=c;
+   }
+   else if (c=='\\' && t+1<len && commandLine.charAt(t+1)=='\n')
+   {
+    t++; // a line continuation neither starts nor ends an arg
+   }
+   else
+   {
+    if (Character.isWhitespace(c))
+    {
+     if (start>=0)
+     {
+      res.add(start, w);
+      start=-1;
+     }
+    }
+    else
+    {
+     if (start<0) start=w;
+
+     if (c=='\'' || c=='"')
+      quote=c;
+     else if (c=='\\')
+     {
+      if (t+1>=len) throw new IllegalArgumentException("Dangling escape at the end of the command line");
+      chars[w++]=commandLine.charAt(++t);
+     }
+     else
+      chars[w++]=c;
+    }
+   }
+  }
+
+  if (quote!=0)
+   throw new IllegalArgumentException("Unterminated "+quote+" quote in the command line");
+
+  if (start>=0)
+   res.add(start, w);
+
+  return res;
+ }
+
+
+}
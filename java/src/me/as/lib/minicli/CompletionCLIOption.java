@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * A hidden option printing a completion script for bash, zsh or fish (see {@link CompletionHandler}), which completes the options of
+ * the program without starting it:
+ * <pre>
+ * &#64;CompletionCLIOption String completion;
+ * ...
+ * eval "$(mytool --completion bash)"
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+@CLIOption
+(
+ name= "--completion",
+ operand="<bash|zsh|fish>[:<program name>]",
+ usage="prints the shell completion script for this program and terminates.",
+ handlerClass=CompletionHandler.class,
+ execAndExit=true,
+ documented=false,
+ configFileName=""
+)
+public @interface CompletionCLIOption
+{
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.extra.BoxFor2;
+import me.as.lib.minicli.BasicCLIOptionHandlers.BooleanCLIOptionHandlers;
+import me.as.lib.minicli.BasicCLIOptionHandlers.StringCLIOptionHandler;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static me.as.lib.core.lang.StringExtras.isBlank;
+
+
+/**
+ * Prints a completion script for bash, zsh or fish (see {@link CompletionCLIOption}). The script is self-contained: it knows the
+ * names and the visible aliases of the documented options, the constants of the enum options and which options take paths, so completing
+ * a word runs no JVM at all. Regenerate it when the options change.
+ *
+ * <p>
+ * The operand is the shell, optionally followed by :name, the name the program is run with; when missing the name is taken from the
+ * minicli.programName system property, otherwise it is the simple name of the runner class in lower case.
+ */
+public class CompletionHandler extends StringCLIOptionHandler
+{
+ public static final String programNameProperty="minicli.programName";
+ public static final String shells[]={"bash", "zsh", "fish"};
+
+
+ protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
+ {
+  if (operand==null) return 1;
+
+  int colon=operand.indexOf(':');
+  String shell=(colon>=0 ? operand.substring(0, colon) : operand);
+  String programName=(colon>=0 ? operand.substring(colon+1) : System.getProperty(programNameProperty));
+
+  if (isBlank(programName))
+   programName=handler.getSchema().getRunnerClass().getSimpleName().toLowerCase(Locale.ROOT);
+
+  try
+  {
+   handler.getOut().print(script(handler.getSchema(), shell, programName));
+   handler.getOut().flush();
+  }
+  catch (IllegalArgumentException iae)
+  {
+   handler.getProblems().addShowStopper(iae.getMessage()+" for option "+option.element2.name);
+  }
+
+  return 1;
+ }
+
+
+ /**
+  * The completion script of schema for shell (bash, zsh or fish) and for the program run as programName
+  */
+ public static String script(CLISchema schema, String shell, String programName)
+ {
+  List<Completion> completions=completionsOf(schema);
+  boolean arguments=!schema.getAllArguments().isEmpty();
+
+  switch (shell)
+  {
+   case "bash": return bash(completions, arguments, programName);
+   case "zsh": return zsh(completions, arguments, programName);
+   case "fish": return fish(completions, arguments, programName);
+   default: throw new IllegalArgumentException("Unknown shell '"+shell+"', valid ones are: "+String.join(", ", shells));
+  }
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ enum Operand
+ {
+  none,
+  value,
+  values,
+  file,
+  directory
+ }
+
+
+ static class Completion
+ {
+  final List<String> names=new ArrayList<>();
+  Operand operand;
+  String values[];
+  String description;
+ }
+
+
+ static List<Completion> completionsOf(CLISchema schema)
+ {
+  List<Completion> res=new ArrayList<>();
+
+  for (BoxFor2<Field, Settings> option : schema.getAllOptions())
+  {
+   if (!option.element2.documented) continue;
+
+   Completion completion=new Completion();
+   Class type=option.element1.getType();
+   CLIOptionHandler handler=schema.getOptionHandler(option);
+
+   completion.names.add(option.element2.name);
+
+   if (option.element2.aliases!=null)
+   {
+    for (String alias : option.element2.aliases)
+     if (!alias.startsWith(".")) completion.names.add(alias);
+   }
+
+   if (isInstanceOfNoOperand(type) || !(handler instanceof StringCLIOptionHandler) || handler instanceof BooleanCLIOptionHandlers)
+    completion.operand=Operand.none;
+   else if (type.isEnum())
+   {
+    Object constants[]=type.getEnumConstants();
+
+    completion.operand=Operand.values;
+    completion.values=new String[constants.length];
+    for (int t=0;t<constants.length;t++) completion.values[t]=constants[t].toString();
+   }
+   else if (handler instanceof PathHandler || handler instanceof PathsHandler || handler instanceof PathsJarsZipsHandler ||
+            handler instanceof ConfigFileNameHandler)
+   {
+    CLIPath cliPath=option.element1.getAnnotation(CLIPath.class);
+    completion.operand=(cliPath!=null && cliPath.directory() ? Operand.directory : Operand.file);
+   }
+   else
+    completion.operand=Operand.value;
+
+   String usage=option.element2.usage;
+
+   if (!isBlank(usage) && !usage.startsWith("§"))
+   {
+    usage=usage.trim();
+    int end=usage.indexOf('\n');
+    if (end>0) usage=usage.substring(0, end);
+    if (usage.length()>70) usage=usage.substring(0, 67)+"...";
+    completion.description=usage;
+   }
+
+   res.add(completion);
+  }
+
+  return res;
+ }
+
+
+ private static boolean isInstanceOfNoOperand(Class type)
+ {
+  return NoOperand.class.isAssignableFrom(type);
+ }
+
+
+ private static String quote(String s)
+ {
+  return "'"+s.replace("'", "'\\''")+"'";
+ }
+
+
+ private static String functionName(String programName)
+ {
+  StringBuilder sb=new StringBuilder("_");
+
+  for (char c : programName.toCharArray())
+   sb.append(Character.isLetterOrDigit(c) ? c : '_');
+
+  return sb.append("_minicli").toString();
+ }
+
+
+ private static String joined(String values[], String separator, boolean quoted)
+ {
+  StringBuilder sb=new StringBuilder();
+
+  for (String value : values)
+  {
+   if (sb.length()>0) sb.append(separator);
+   sb.append(quoted ? quote(value) : value);
+  }
+
+  return sb.toString();
+ }
+
+
+ private static String bash(List<Completion> completions, boolean arguments, String programName)
+ {
+  String function=functionName(programName);
+  StringBuilder sb=new StringBuilder();
+  List<String> allNames=new ArrayList<>();
+
+  sb.append("# bash completion for ").append(programName).append(", generated by miniCLI\n");
+  sb.append("# use it with: eval \"$(").append(programName).append(" --completion bash)\"\n");
+  sb.append(function).append("()\n{\n");
+  sb.append(" local cur=\"${COMP_WORDS[COMP_CWORD]}\" prev=\"\"\n");
+  sb.append(" [ \"$COMP_CWORD\" -gt 0 ] && prev=\"${COMP_WORDS[COMP_CWORD-1]}\"\n");
+  sb.append(" case \"$prev\" in\n");
+
+  for (Completion completion : completions)
+  {
+   allNames.addAll(completion.names);
+   if (completion.operand==Operand.none) continue;
+
+   sb.append("  ").append(joined(completion.names.toArray(new String[0]), "|", true)).append(") ");
+
+   switch (completion.operand)
+   {
+    case values: sb.append("COMPREPLY=($(compgen -W ").append(quote(joined(completion.values, " ", false))).append(" -- \"$cur\"))"); break;
+    case file: sb.append("COMPREPLY=($(compgen -f -- \"$cur\"))"); break;
+    case directory: sb.append("COMPREPLY=($(compgen -d -- \"$cur\"))"); break;
+    default: sb.append("COMPREPLY=()"); break;
+   }
+
+   sb.append("; return;;\n");
+  }
+
+  sb.append(" esac\n");
+  sb.append(" if [[ \"$cur\" == -* ]]; then\n");
+  sb.append("  COMPREPLY=($(compgen -W ").append(quote(joined(allNames.toArray(new String[0]), " ", false))).append(" -- \"$cur\"))\n");
+  sb.append(" else\n");
+  sb.append(arguments ? "  COMPREPLY=($(compgen -f -- \"$cur\"))\n" : "  COMPREPLY=()\n");
+  sb.append(" fi\n");
+  sb.append("}\n");
+  sb.append("complete -o filenames -F ").append(function).append(' ').append(quote(programName)).append('\n');
+
+  return sb.toString();
+ }
+
+
+ private static String zsh(List<Completion> completions, boolean arguments, String programName)
+ {
+  String function=functionName(programName);
+  StringBuilder sb=new StringBuilder();
+  List<String> allNames=new ArrayList<>();
+
+  sb.append("#compdef ").append(programName).append('\n');
+  sb.append("# zsh completion for ").append(programName).append(", generated by miniCLI\n");
+  sb.append("# use it with: eval \"$(").append(programName).append(" --completion zsh)\" or save it as _").append(programName)
+   .append(" in a directory of $fpath\n");
+  sb.append(function).append("()\n{\n");
+  sb.append(" case \"${words[CURRENT-1]}\" in\n");
+
+  for (Completion completion : completions)
+  {
+   allNames.addAll(completion.names);
+   if (completion.operand==Operand.none) continue;
+
+   sb.append("  ").append(joined(completion.names.toArray(new String[0]), "|", true)).append(") ");
+
+   switch (completion.operand)
+   {
+    case values: sb.append("compadd -- ").append(joined(completion.values, " ", true)); break;
+    case file: sb.append("_files"); break;
+    case directory: sb.append("_files -/"); break;
+    default: sb.append("_message 'value'"); break;
+   }
+
+   sb.append("; return;;\n");
+  }
+
+  sb.append(" esac\n");
+  sb.append(" if [[ \"${words[CURRENT]}\" == -* ]]; then\n");
+  sb.append("  compadd -- ").append(joined(allNames.toArray(new String[0]), " ", true)).append('\n');
+  sb.append(" else\n");
+  sb.append(arguments ? "  _files\n" : "  return 1\n");
+  sb.append(" fi\n");
+  sb.append("}\n");
+  sb.append("if [[ \"${funcstack[1]}\" == ").append(quote("_"+programName)).append(" ]]; then\n");
+  sb.append(" ").append(function).append(" \"$@\"\n");
+  sb.append("else\n");
+  sb.append(" compdef ").append(function).append(' ').append(quote(programName)).append('\n');
+  sb.append("fi\n");
+
+  return sb.toString();
+ }
+
+
+ // fish knows options like --long, -s (short) and -old (old style) only: other aliases (like /?) are left out
+ private static String fish(List<Completion> completions, boolean arguments, String programName)
+ {
+  StringBuilder sb=new StringBuilder();
+  String command="complete -c "+quote(programName);
+
+  sb.append("# fish completion for ").append(programName).append(", generated by miniCLI\n");
+  sb.append("# use it with: ").append(programName).append(" --completion fish | source\n");
+  sb.append(command).append(" -e\n");
+  if (!arguments) sb.append(command).append(" -f\n");
+
+  for (Completion completion : completions)
+  {
+   StringBuilder names=new StringBuilder();
+
+   for (String name : completion.names)
+   {
+    if (name.startsWith("--") && name.length()>2) names.append(" -l ").append(quote(name.substring(2)));
+     else if (name.startsWith("-") && name.length()==2) names.append(" -s ").append(quote(name.substring(1)));
+     else if (name.startsWith("-") && name.length()>2) names.append(" -o ").append(quote(name.substring(1)));
+   }
+
+   if (names.length()==0) continue;
+
+   sb.append(command).append(names);
+
+   switch (completion.operand)
+   {
+    case values: sb.append(" -x -a ").append(quote(joined(completion.values, " ", false))); break;
+    case file: sb.append(" -r -F"); break;
+    case directory: sb.append(" -x -a '(__fish_complete_directories)'"); break;
+    case value: sb.append(" -x"); break;
+    default: break;
+   }
+
+   if (completion.description!=null) sb.append(" -d ").append(quote(completion.description));
+   sb.append('\n');
+  }
+
+  return sb.toString();
+ }
+
+}
@@ -27,10 +27,11 @@ import static me.as.lib.core.lang.StringExtras.isNotBlank;
 public class ConfigFileNameHandler extends BasicCLIOptionHandlers.StringCLIOptionHandler
 {
 
- protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+ protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
  {
-  super.setFieldValue(handler, argsPos, option);
+  int res=super.setFieldValue(handler, argsPos, option, operand);
   if (isNotBlank(operand)) handler.setConfigFileWasSpecified(true);
+  return res;
  }
 
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+/**
+ * Receives the values read from a config file by a {@link ConfigSource}, only for the keys that have been asked for.
+ * Scalar values come as their text (null for an explicit null), arrays come element by element, in order.
+ */
+public interface ConfigSink
+{
+
+ void value(String key, String value);
+
+ void arrayStart(String key);
+
+ void arrayElement(String key, String value);
+
+ void arrayEnd(String key);
+
+}
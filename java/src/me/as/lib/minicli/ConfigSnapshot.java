@@ -0,0 +1,414 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.extra.BoxFor2;
+import me.as.lib.core.lang.ArrayExtras;
+import me.as.lib.core.lang.ClassExtras;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+
+
+/**
+ * A binary snapshot of the field values bound from a config file, already converted, kept in a cache directory so that the next runs
+ * with the same config file skip its parsing.
+ *
+ * <p>
+ * A snapshot is used only when the size, the last modified time and the SHA-256 of the content of the config file are still the
+ * recorded ones and the fingerprint of the schema (and of the runner class) did not change. Snapshots are written to a temporary
+ * file and then atomically moved in place, so many processes can share the same cache directory: readers see either the old or the
+ * new snapshot, never a partial one. A snapshot is written only when every bound value is of a type it can hold and has been
+ * bound by a built in handler which does nothing else than setting the field.
+ */
+final class ConfigSnapshot
+{
+ static final byte magic[]={'M', 'C', 'S', 'N'};
+ static final int version=1;
+
+ private static final int tNull=0;
+ private static final int tBoolean=1;
+ private static final int tInt=2;
+ private static final int tLong=3;
+ private static final int tFloat=4;
+ private static final int tDouble=5;
+ private static final int tString=6;
+ private static final int tEnum=7;
+ private static final int tInts=8;
+ private static final int tLongs=9;
+ private static final int tDoubles=10;
+ private static final int tStrings=11;
+ private static final int tPath=12;
+ private static final int tFile=13;
+
+ private final Path snapshotFile;
+ private final Path configFile;
+ private final CLISchema schema;
+ private final byte fingerprint[];
+
+
+ ConfigSnapshot(Path cacheDirectory, Path configFile, CLISchema schema, Class<?> runnerClass)
+ {
+  this.configFile=configFile;
+  this.schema=schema;
+  this.fingerprint=fingerprint(schema, runnerClass);
+
+  String id=configFile.toAbsolutePath().normalize()+"\u0000"+runnerClass.getName();
+  this.snapshotFile=cacheDirectory.resolve(toHex(sha256(id.getBytes(StandardCharsets.UTF_8)), 16)+".snap");
+ }
+
+
+ static boolean isCacheable(CLISchema schema, BoxFor2<Field, Settings> option)
+ {
+  if (option.element2.type!=Settings.Type.option || option.element2.execAndExit) return false;
+
+  Class handlerClass=schema.getOptionHandler(option).getClass();
+  return (handlerClass.getEnclosingClass()==BasicCLIOptionHandlers.class || handlerClass==PathHandler.class);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ /**
+  * When the snapshot is valid for the config file as it is now (size, last modified time and contentHash already read by the caller)
+  * passes every value with its position in the schema to binder and returns true, otherwise returns false without calling binder at all
+  */
+ boolean load(long size, long modified, byte hash[], ObjIntConsumer<Object> binder)
+ {
+  if (!Files.isRegularFile(snapshotFile)) return false;
+
+  try
+  {
+   ByteBuffer buffer;
+
+   try (FileChannel channel=FileChannel.open(snapshotFile, StandardOpenOption.READ))
+   {
+    buffer=channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+   }
+
+   if (!Arrays.equals(readBytes(buffer, magic.length), magic) || buffer.get()!=version) return false;
+   if (!Arrays.equals(readBytes(buffer, fingerprint.length), fingerprint)) return false;
+
+   if (buffer.getLong()!=size || buffer.getLong()!=modified) return false;
+   if (!Arrays.equals(readBytes(buffer, hash.length), hash)) return false;
+
+   List<BoxFor2<Field, Settings>> fieldsAndSettings=schema.getFieldsAndSettings();
+   int t, count=buffer.getInt();
+   int positions[]=new int[count];
+   Object values[]=new Object[count];
+
+   for (t=0;t<count;t++)
+   {
+    positions[t]=buffer.getShort()&0xffff;
+    if (positions[t]>=fieldsAndSettings.size()) return false;
+    values[t]=readValue(buffer, fieldsAndSettings.get(positions[t]).element1.getType());
+   }
+
+   if (buffer.hasRemaining()) return false;
+
+   for (t=0;t<count;t++)
+    binder.accept(values[t], positions[t]);
+
+   return true;
+  }
+  catch (IOException | RuntimeException e)
+  {
+   return false;
+  }
+ }
+
+
+ /**
+  * Writes the snapshot of the values of bound (read with getter), unless the size or the last modified time of the config file changed
+  * while it was being bound. The content is not hashed again: a change that kept both is caught by the next load, which compares
+  * hashBefore with the hash of the file as it is then. Failures are ignored: the cache is only an optimization.
+  */
+ void store(List<BoxFor2<Field, Settings>> bound, Function<BoxFor2<Field, Settings>, Object> getter, long sizeBefore, long modifiedBefore, byte hashBefore[])
+ {
+  Path temp=null;
+
+  try
+  {
+   BasicFileAttributes attributes=Files.readAttributes(configFile, BasicFileAttributes.class);
+   if (attributes.size()!=sizeBefore || attributes.lastModifiedTime().toMillis()!=modifiedBefore) return;
+
+   ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+   DataOutputStream out=new DataOutputStream(bytes);
+
+   out.write(magic);
+   out.writeByte(version);
+   out.write(fingerprint);
+   out.writeLong(sizeBefore);
+   out.writeLong(modifiedBefore);
+   out.write(hashBefore);
+   out.writeInt(bound.size());
+
+   for (BoxFor2<Field, Settings> b2 : bound)
+   {
+    if (!isCacheable(schema, b2)) return;
+
+    out.writeShort(b2.element2.position);
+    if (!writeValue(out, getter.apply(b2))) return;
+   }
+
+   out.flush();
+
+   Files.createDirectories(snapshotFile.getParent());
+   temp=Files.createTempFile(snapshotFile.getParent(), snapshotFile.getFileName().toString(), ".tmp");
+   Files.write(temp, bytes.toByteArray());
+
+   try
+   {
+    Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+   }
+   catch (AtomicMoveNotSupportedException amnse)
+   {
+    Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+   }
+
+   temp=null;
+  }
+  catch (IOException | RuntimeException ignore) {}
+  finally
+  {
+   if (temp!=null) try { Files.deleteIfExists(temp); } catch (IOException ignore) {}
+  }
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private static boolean writeValue(DataOutputStream out, Object value) throws IOException
+ {
+  if (value==null) out.writeByte(tNull);
+  else if (value instanceof Boolean) { out.writeByte(tBoolean); out.writeBoolean((Boolean)value); }
+  else if (value instanceof Integer) { out.writeByte(tInt); out.writeInt((Integer)value); }
+  else if (value instanceof Long) { out.writeByte(tLong); out.writeLong((Long)value); }
+  else if (value instanceof Float) { out.writeByte(tFloat); out.writeFloat((Float)value); }
+  else if (value instanceof Double) { out.writeByte(tDouble); out.writeDouble((Double)value); }
+  else if (value instanceof String) { out.writeByte(tString); writeString(out, (String)value); }
+  else if (value instanceof Enum) { out.writeByte(tEnum); writeString(out, ((Enum)value).name()); }
+  else if (value instanceof Path) { out.writeByte(tPath); writeString(out, value.toString()); }
+  else if (value instanceof File) { out.writeByte(tFile); writeString(out, ((File)value).getPath()); }
+  else if (value instanceof int[])
+  {
+   int values[]=(int[])value;
+   out.writeByte(tInts);
+   out.writeInt(values.length);
+   for (int v : values) out.writeInt(v);
+  }
+  else if (value instanceof long[])
+  {
+   long values[]=(long[])value;
+   out.writeByte(tLongs);
+   out.writeInt(values.length);
+   for (long v : values) out.writeLong(v);
+  }
+  else if (value instanceof double[])
+  {
+   double values[]=(double[])value;
+   out.writeByte(tDoubles);
+   out.writeInt(values.length);
+   for (double v : values) out.writeDouble(v);
+  }
+  else if (value instanceof String[])
+  {
+   String values[]=(String[])value;
+   out.writeByte(tStrings);
+   out.writeInt(values.length);
+   for (String v : values) writeString(out, v);
+  }
+  else
+   return false;
+
+  return true;
+ }
+
+
+ private static Object readValue(ByteBuffer buffer, Class fieldType)
+ {
+  int t, len;
+
+  switch (buffer.get())
+  {
+   case tNull    : return null;
+   case tBoolean : return (buffer.get()!=0);
+   case tInt     : return buffer.getInt();
+   case tLong    : return buffer.getLong();
+   case tFloat   : return buffer.getFloat();
+   case tDouble  : return buffer.getDouble();
+   case tString  : return readString(buffer);
+   case tEnum    : return Enum.valueOf(fieldType, readString(buffer));
+   case tPath    : return Paths.get(readString(buffer));
+   case tFile    : return new File(readString(buffer));
+
+   case tInts:
+    int ints[]=new int[len=buffer.getInt()];
+    buffer.asIntBuffer().get(ints);
+    buffer.position(buffer.position()+len*4);
+    return ints;
+
+   case tLongs:
+    long longs[]=new long[len=buffer.getInt()];
+    buffer.asLongBuffer().get(longs);
+    buffer.position(buffer.position()+len*8);
+    return longs;
+
+   case tDoubles:
+    double doubles[]=new double[len=buffer.getInt()];
+    buffer.asDoubleBuffer().get(doubles);
+    buffer.position(buffer.position()+len*8);
+    return doubles;
+
+   case tStrings:
+    String strings[]=new String[len=buffer.getInt()];
+    for (t=0;t<len;t++) strings[t]=readString(buffer);
+    return strings;
+
+   default: throw new IllegalArgumentException("Unknown value type");
+  }
+ }
+
+
+ private static void writeString(DataOutputStream out, String s) throws IOException
+ {
+  if (s==null)
+   out.writeInt(-1);
+  else
+  {
+   byte bytes[]=s.getBytes(StandardCharsets.UTF_8);
+   out.writeInt(bytes.length);
+   out.write(bytes);
+  }
+ }
+
+
+ private static String readString(ByteBuffer buffer)
+ {
+  int length=buffer.getInt();
+  return (length<0 ? null : new String(readBytes(buffer, length), StandardCharsets.UTF_8));
+ }
+
+
+ private static byte[] readBytes(ByteBuffer buffer, int length)
+ {
+  byte res[]=new byte[length];
+  buffer.get(res);
+  return res;
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ static byte[] contentHash(Path file) throws IOException
+ {
+  MessageDigest digest=newSha256();
+
+  try (FileChannel channel=FileChannel.open(file, StandardOpenOption.READ))
+  {
+   long size=channel.size();
+
+   if (size>0)
+   {
+    MappedByteBuffer mapped=channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    digest.update(mapped);
+   }
+  }
+
+  return digest.digest();
+ }
+
+
+ // what the snapshot depends on: every annotated field with its settings and the fields of the runner class
+ private static byte[] fingerprint(CLISchema schema, Class<?> runnerClass)
+ {
+  StringBuilder sb=new StringBuilder();
+
+  sb.append(version).append('|').append(schema.getRunnerClass().getName());
+
+  for (BoxFor2<Field, Settings> b2 : schema.getFieldsAndSettings())
+  {
+   Settings s=b2.element2;
+
+   sb.append('|').append(b2.element1.getDeclaringClass().getName()).append('.').append(b2.element1.getName())
+     .append(':').append(b2.element1.getGenericType().getTypeName())
+     .append(':').append(s.type).append(':').append(s.name).append(':').append(s.configFileName).append(':').append(s.separator)
+     .append(':').append(s.optionHandlerClass!=null ? s.optionHandlerClass.getName() : "")
+     .append(':').append(s.argumentHandlerClass!=null ? s.argumentHandlerClass.getName() : "");
+  }
+
+  sb.append('|').append(runnerClass.getName());
+
+  Field fields[]=ClassExtras.getAllFields(runnerClass);
+  int t, len=ArrayExtras.length(fields);
+
+  for (t=0;t<len;t++)
+   sb.append('|').append(fields[t].getName()).append(':').append(fields[t].getGenericType().getTypeName());
+
+  return sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+ }
+
+
+ private static byte[] sha256(byte bytes[])
+ {
+  return newSha256().digest(bytes);
+ }
+
+
+ private static MessageDigest newSha256()
+ {
+  try
+  {
+   return MessageDigest.getInstance("SHA-256");
+  }
+  catch (NoSuchAlgorithmException nsae)
+  {
+   throw new RuntimeException(nsae);
+  }
+ }
+
+
+ private static String toHex(byte bytes[], int length)
+ {
+  StringBuilder sb=new StringBuilder();
+  int t;
+
+  for (t=0;t<length;t++)
+   sb.append(Character.forDigit((bytes[t]>>4)&0xf, 16)).append(Character.forDigit(bytes[t]&0xf, 16));
+
+  return sb.toString();
+ }
+
+}
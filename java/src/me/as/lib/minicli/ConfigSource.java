@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+
+/**
+ * A config file format. The implementations are found with {@link java.util.ServiceLoader} (list them in
+ * META-INF/services/me.as.lib.minicli.ConfigSource) and chosen by the extension of the config file; the ones for .json, .properties
+ * and .mcfg (see {@link BinaryConfigSource}) are built in. Files with an unknown extension are read as JSON.
+ *
+ * <p>
+ * Config files can be big and shared by many programs, each reading only a few keys: an implementation should decode only the
+ * values of the given keys and skip everything else as cheaply as it can.
+ */
+public interface ConfigSource
+{
+
+ /**
+  * The extensions handled, without the dot, like "json"
+  */
+ String[] extensions();
+
+ /**
+  * Passes to sink the values of the given keys found in file
+  */
+ void read(Path file, Set<String> keys, ConfigSink sink) throws IOException;
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+
+/**
+ * The registry of the {@link ConfigSource}s, loaded once: the built in ones first, then those found with ServiceLoader, which win
+ * when they handle the same extension
+ */
+final class ConfigSources
+{
+ private static final ConfigSource defaultSource=new JsonConfigSource();
+ private static final Map<String, ConfigSource> byExtension=new HashMap<>();
+
+ static
+ {
+  register(defaultSource);
+  register(new PropertiesConfigSource());
+  register(new BinaryConfigSource());
+
+  for (ConfigSource source : ServiceLoader.load(ConfigSource.class))
+   register(source);
+ }
+
+
+ private ConfigSources(){}
+
+
+ private static void register(ConfigSource source)
+ {
+  for (String extension : source.extensions())
+   byExtension.put(extension.toLowerCase(Locale.ROOT), source);
+ }
+
+
+ static ConfigSource forFile(Path file)
+ {
+  String name=file.getFileName().toString();
+  int dot=name.lastIndexOf('.');
+
+  if (dot>=0)
+  {
+   ConfigSource res=byExtension.get(name.substring(dot+1).toLowerCase(Locale.ROOT));
+   if (res!=null) return res;
+  }
+
+  return defaultSource;
+ }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.lang.ExceptionExtras;
+import me.as.lib.core.report.Problems;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Keeps a runner configured by a config file up to date while the program runs, for long running programs which should not be
+ * restarted to change their configuration.
+ *
+ * <p>
+ * The config file is watched and, once it stops changing for a while (the debounce time), a fresh runner is created from the same
+ * args and configured by the file: when there are no problems it replaces the current one, otherwise the current one is kept and the
+ * problems are passed to the listeners.
+ *
+ * <pre>
+ * ConfigWatcher&lt;MyServer&gt; watcher=ConfigWatcher.watch(parser, args, configFile, problems);
+ * ...
+ * MyServer current=watcher.get(); // always the last valid configuration
+ * </pre>
+ */
+public class ConfigWatcher<R> implements Closeable
+{
+ public static final long defaultDebounceMillis=200;
+
+
+ public interface Listener<R>
+ {
+  /**
+   * A new valid configuration has been published
+   */
+  void configChanged(R previous, R current);
+
+  /**
+   * The changed config file is not valid, the previous configuration is still the current one
+   */
+  default void configRejected(Problems problems) {}
+ }
+
+
+ /**
+  * Configures a first runner and starts watching configFile: returns null when the first configuration fails (the problems tell why)
+  */
+ public static <R> ConfigWatcher<R> watch(CLIParser<R> parser, String args[], Path configFile, Problems problems) throws IOException
+ {
+  return watch(parser, args, configFile, problems, defaultDebounceMillis);
+ }
+
+ public static <R> ConfigWatcher<R> watch(CLIParser<R> parser, String args[], Path configFile, Problems problems, long debounceMillis) throws IOException
+ {
+  ConfigWatcher<R> res=new ConfigWatcher<>(parser, args, configFile, debounceMillis);
+  R first;
+
+  try
+  {
+   first=res.configure(problems);
+  }
+  catch (RuntimeException re)
+  {
+   res.close();
+   throw re;
+  }
+
+  if (first==null)
+  {
+   res.close();
+   return null;
+  }
+
+  res.current.set(first);
+  res.start();
+  return res;
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private final CLIParser<R> parser;
+ private final String args[];
+ private final Path configFile;
+ private final long debounceMillis;
+ private final AtomicReference<R> current=new AtomicReference<>();
+ private final List<Listener<R>> listeners=new CopyOnWriteArrayList<>();
+ private final WatchService watchService;
+
+
+ private ConfigWatcher(CLIParser<R> parser, String args[], Path configFile, long debounceMillis) throws IOException
+ {
+  this.parser=parser;
+  this.args=args.clone();
+  this.configFile=configFile.toAbsolutePath();
+  this.debounceMillis=debounceMillis;
+  this.watchService=this.configFile.getFileSystem().newWatchService();
+
+  // editors often write a new file and rename it, so creations count as well
+  this.configFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+ }
+
+
+ /**
+  * The last valid configuration
+  */
+ public R get()
+ {
+  return current.get();
+ }
+
+
+ public void addListener(Listener<R> listener)
+ {
+  listeners.add(listener);
+ }
+
+ public void removeListener(Listener<R> listener)
+ {
+  listeners.remove(listener);
+ }
+
+
+ /**
+  * Stops watching
+  */
+ public void close() throws IOException
+ {
+  watchService.close();
+ }
+
+
+ /**
+  * Configures a fresh runner now, like a change of the config file would do, and returns true if it has been published
+  */
+ public synchronized boolean reload()
+ {
+  Problems problems=new Problems();
+  R fresh=configure(problems);
+
+  if (fresh!=null)
+  {
+   R previous=current.getAndSet(fresh);
+   for (Listener<R> listener : listeners) notifyChanged(listener, previous, fresh);
+   return true;
+  }
+
+  for (Listener<R> listener : listeners) notifyRejected(listener, problems);
+  return false;
+ }
+
+
+ private R configure(Problems problems)
+ {
+  CommandLineHandler<R> handler=parser.newCommandLineHandler(args, problems);
+  R res=handler.createAndConfigureRunner();
+
+  if (res!=null && (!handler.configureByFile(res, configFile.toString()) || problems.areThereShowStoppers()))
+   res=null;
+
+  return res;
+ }
+
+
+ private void start()
+ {
+  Thread thread=new Thread(this::run, "miniCLI config watcher "+configFile.getFileName());
+  thread.setDaemon(true);
+  thread.start();
+ }
+
+
+ private void run()
+ {
+  try
+  {
+   for (;;)
+   {
+    if (!isAboutConfigFile(watchService.take())) continue;
+
+    // debounce: wait until the file stops changing
+    WatchKey key;
+    while ((key=watchService.poll(debounceMillis, TimeUnit.MILLISECONDS))!=null)
+     isAboutConfigFile(key);
+
+    try
+    {
+     reload();
+    }
+    catch (RuntimeException re)
+    {
+     // a runner failing to be created or configured is a rejected configuration, the watcher goes on
+     Problems problems=new Problems();
+     problems.addShowStopper("Exception while reloading the config file '"+configFile+"'\n"+ExceptionExtras.getDeepCauseStackTrace(re));
+     for (Listener<R> listener : listeners) notifyRejected(listener, problems);
+    }
+   }
+  }
+  catch (InterruptedException | ClosedWatchServiceException stop) {}
+ }
+
+
+ // consumes the events of the key
+ private boolean isAboutConfigFile(WatchKey key)
+ {
+  boolean res=false;
+
+  for (WatchEvent<?> event : key.pollEvents())
+  {
+   if (event.kind()==StandardWatchEventKinds.OVERFLOW || configFile.getFileName().equals(event.context()))
+    res=true;
+  }
+
+  key.reset();
+  return res;
+ }
+
+
+ // a failing listener must not stop the watcher nor the other listeners
+ private void notifyChanged(Listener<R> listener, R previous, R current)
+ {
+  try { listener.configChanged(previous, current); } catch (RuntimeException ignore) {}
+ }
+
+ private void notifyRejected(Listener<R> listener, Problems problems)
+ {
+  try { listener.configRejected(problems); } catch (RuntimeException ignore) {}
+ }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * The protocol between {@link CLIClient} and {@link CLIDaemon}: frames made of a type byte, a big endian int length and that many
+ * bytes of payload (strings are UTF-8).
+ *
+ * <p>
+ * The client sends its working directory (D), its environment (E, one NAME=value each), its args (A, one each, in order) and then go
+ * (G, empty). The server answers with stdout (1) and stderr (2) chunks and at last with the exit code (X, a 4 bytes int); when the
+ * program reads its stdin the server asks for it (I, empty) and from then on the client sends it in chunks (0), an empty one at the end.
+ *
+ * <p>
+ * The channel is read by one thread only and written by many, frame by frame. The streams of {@link java.nio.channels.Channels}
+ * are not used because, on a SocketChannel, a blocked read would block the writes as well.
+ */
+final class DaemonFrames
+{
+ static final byte workingDirectory='D';
+ static final byte environment='E';
+ static final byte argument='A';
+ static final byte go='G';
+ static final byte stdin='0';
+ static final byte stdinRequest='I';
+ static final byte stdout='1';
+ static final byte stderr='2';
+ static final byte exit='X';
+
+ static final int maxLength=16*1024*1024;
+
+ private final SocketChannel channel;
+ private final ByteBuffer readHeader=ByteBuffer.allocate(5);
+ private final ByteBuffer writeHeader=ByteBuffer.allocate(5);
+ private final Object writeLock=new Object();
+ private byte type;
+
+
+ DaemonFrames(SocketChannel channel)
+ {
+  this.channel=channel;
+ }
+
+
+ /**
+  * The type of the frame last read
+  */
+ byte type()
+ {
+  return type;
+ }
+
+
+ /**
+  * Reads the next frame and returns its payload (see {@link #type()})
+  */
+ byte[] read() throws IOException
+ {
+  readHeader.clear();
+  readFully(readHeader);
+
+  type=readHeader.get(0);
+  int length=readHeader.getInt(1);
+
+  if (length<0 || length>maxLength) throw new IOException("Invalid frame length "+length);
+
+  ByteBuffer payload=ByteBuffer.allocate(length);
+  readFully(payload);
+
+  return payload.array();
+ }
+
+
+ String readString() throws IOException
+ {
+  return new String(read(), StandardCharsets.UTF_8);
+ }
+
+
+ private void readFully(ByteBuffer buffer) throws IOException
+ {
+  while (buffer.hasRemaining())
+  {
+   if (channel.read(buffer)<0) throw new EOFException("Connection closed");
+  }
+ }
+
+
+ void write(byte type, byte bytes[], int offset, int length) throws IOException
+ {
+  synchronized (writeLock)
+  {
+   writeHeader.clear();
+   writeHeader.put(type).putInt(length).flip();
+
+   ByteBuffer buffers[]={writeHeader, ByteBuffer.wrap(bytes, offset, length)};
+
+   while (buffers[1].hasRemaining() || writeHeader.hasRemaining())
+    channel.write(buffers);
+  }
+ }
+
+
+ void write(byte type, String s) throws IOException
+ {
+  byte bytes[]=s.getBytes(StandardCharsets.UTF_8);
+  write(type, bytes, 0, bytes.length);
+ }
+
+
+ void write(byte type) throws IOException
+ {
+  write(type, new byte[0], 0, 0);
+ }
+
+
+ void writeInt(byte type, int value) throws IOException
+ {
+  write(type, ByteBuffer.allocate(4).putInt(value).array(), 0, 4);
+ }
+
+}
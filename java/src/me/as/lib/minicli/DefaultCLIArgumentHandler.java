@@ -31,20 +31,19 @@ public class DefaultCLIArgumentHandler implements CLIArgumentHandler
  public void handleArgument(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> argument)
  {
   String value=handler.getArgs()[argsPos];
-  Object cliInstance=handler.getRunnerInstance();
 
   Class type=argument.element1.getType();
   if (type==String.class)
-   ClassExtras.setFieldValue_bruteForce(cliInstance, argument.element1, value);
+   handler.setFieldValue(argument, value);
   else
   {
    if (ClassExtras.isInstanceOf(type, List.class))
    {
-    argument.element2.isMultiValue=true;
-    List<String> list=(List<String>)ClassExtras.getFieldValue_bruteForce(cliInstance, argument.element1);
+    handler.setMultiValue(argument);
+    List<String> list=(List<String>)handler.getFieldValue(argument);
 
     if (list==null)
-     ClassExtras.setFieldValue_bruteForce(cliInstance, argument.element1, list=new ArrayList<>());
+     handler.setFieldValue(argument, list=new ArrayList<>());
 
     list.add(value);
    }
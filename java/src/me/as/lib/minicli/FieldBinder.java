@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.lang.ClassExtras;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+
+/**
+ * Reads and writes one annotated field. Binders are resolved once, when the {@link CLISchema} is built, so that writing a value costs no
+ * reflective call, and the primitive setters (setInt, setLong, ...) write primitive fields without boxing.
+ *
+ * <p>
+ * Binders are reached through the schema, never from a constant, so the JIT cannot fold the handle of a field into the caller: the
+ * handles are adapted once to the exact type of each setter, so that a call costs one invokeExact and no type check. Only the direct
+ * assignments of a generated parser (see {@link GeneratedCLIParser}) are as fast as writing the field by hand; see the benchmarks in
+ * the bench module for the numbers.
+ */
+public abstract class FieldBinder
+{
+
+ public static FieldBinder of(Field field)
+ {
+  int modifiers=field.getModifiers();
+
+  if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers))
+  {
+   try
+   {
+    return new MethodHandleBinder(MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup()).unreflectVarHandle(field));
+   }
+   catch (Throwable ignore){}
+  }
+
+  return new ReflectionBinder(field);
+ }
+
+
+ public static FieldBinder of(GeneratedCLIParser generated, int position, Field field)
+ {
+  if (generated!=null && generated.isDirect(position))
+   return new GeneratedBinder(generated, position);
+
+  return of(field);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ public abstract Object get(Object instance);
+
+ public abstract void set(Object instance, Object value);
+
+ public void setInt(Object instance, int value)
+ {
+  set(instance, value);
+ }
+
+ public void setLong(Object instance, long value)
+ {
+  set(instance, value);
+ }
+
+ public void setFloat(Object instance, float value)
+ {
+  set(instance, value);
+ }
+
+ public void setDouble(Object instance, double value)
+ {
+  set(instance, value);
+ }
+
+ public void setBoolean(Object instance, boolean value)
+ {
+  set(instance, value);
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ static class MethodHandleBinder extends FieldBinder
+ {
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+  private final MethodHandle intSetter;
+  private final MethodHandle longSetter;
+  private final MethodHandle floatSetter;
+  private final MethodHandle doubleSetter;
+  private final MethodHandle booleanSetter;
+
+  MethodHandleBinder(VarHandle vh)
+  {
+   MethodHandle set=vh.toMethodHandle(VarHandle.AccessMode.SET);
+
+   getter=vh.toMethodHandle(VarHandle.AccessMode.GET).asType(MethodType.methodType(Object.class, Object.class));
+   setter=set.asType(MethodType.methodType(void.class, Object.class, Object.class));
+   intSetter=adapt(set, int.class);
+   longSetter=adapt(set, long.class);
+   floatSetter=adapt(set, float.class);
+   doubleSetter=adapt(set, double.class);
+   booleanSetter=adapt(set, boolean.class);
+  }
+
+  // null when the field cannot take a value of that primitive type without going through Object
+  private static MethodHandle adapt(MethodHandle set, Class<?> primitive)
+  {
+   Class<?> fieldType=set.type().parameterType(1);
+
+   if (!fieldType.isPrimitive() && fieldType!=MethodType.methodType(primitive).wrap().returnType()) return null;
+
+   try
+   {
+    return set.asType(MethodType.methodType(void.class, Object.class, primitive));
+   }
+   catch (RuntimeException notConvertible)
+   {
+    return null;
+   }
+  }
+
+  private static RuntimeException rethrow(Throwable tr)
+  {
+   if (tr instanceof RuntimeException) return (RuntimeException)tr;
+   if (tr instanceof Error) throw (Error)tr;
+   return new RuntimeException(tr);
+  }
+
+  public Object get(Object instance)
+  {
+   try { return (Object)getter.invokeExact(instance); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+
+  public void set(Object instance, Object value)
+  {
+   try { setter.invokeExact(instance, value); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+
+  public void setInt(Object instance, int value)
+  {
+   if (intSetter==null) { set(instance, value); return; }
+   try { intSetter.invokeExact(instance, value); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+
+  public void setLong(Object instance, long value)
+  {
+   if (longSetter==null) { set(instance, value); return; }
+   try { longSetter.invokeExact(instance, value); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+
+  public void setFloat(Object instance, float value)
+  {
+   if (floatSetter==null) { set(instance, value); return; }
+   try { floatSetter.invokeExact(instance, value); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+
+  public void setDouble(Object instance, double value)
+  {
+   if (doubleSetter==null) { set(instance, value); return; }
+   try { doubleSetter.invokeExact(instance, value); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+
+  public void setBoolean(Object instance, boolean value)
+  {
+   if (booleanSetter==null) { set(instance, value); return; }
+   try { booleanSetter.invokeExact(instance, value); } catch (Throwable tr) { throw rethrow(tr); }
+  }
+ }
+
+
+ static class GeneratedBinder extends FieldBinder
+ {
+  private final GeneratedCLIParser generated;
+  private final int position;
+
+  GeneratedBinder(GeneratedCLIParser generated, int position)
+  {
+   this.generated=generated;
+   this.position=position;
+  }
+
+  public Object get(Object instance)
+  {
+   return generated.get(instance, position);
+  }
+
+  public void set(Object instance, Object value)
+  {
+   generated.set(instance, position, value);
+  }
+
+  public void setInt(Object instance, int value)
+  {
+   generated.setInt(instance, position, value);
+  }
+
+  public void setLong(Object instance, long value)
+  {
+   generated.setLong(instance, position, value);
+  }
+
+  public void setFloat(Object instance, float value)
+  {
+   generated.setFloat(instance, position, value);
+  }
+
+  public void setDouble(Object instance, double value)
+  {
+   generated.setDouble(instance, position, value);
+  }
+
+  public void setBoolean(Object instance, boolean value)
+  {
+   generated.setBoolean(instance, position, value);
+  }
+ }
+
+
+ static class ReflectionBinder extends FieldBinder
+ {
+  private final Field field;
+
+  ReflectionBinder(Field field)
+  {
+   this.field=field;
+  }
+
+  public Object get(Object instance)
+  {
+   return ClassExtras.getFieldValue_bruteForce(instance, field);
+  }
+
+  public void set(Object instance, Object value)
+  {
+   ClassExtras.setFieldValue_bruteForce(instance, field, value);
+  }
+ }
+
+
+}
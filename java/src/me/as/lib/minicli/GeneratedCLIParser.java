@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+/**
+ * Implemented by the classes named &lt;Clazz&gt;$CLIParser that the miniCLI annotation processor (see the processor module) emits at compile
+ * time for every class having fields annotated with {@link CLIOption} or {@link CLIArgument}.
+ *
+ * <p>
+ * When such a class is found next to the runner class, {@link CommandLineHandler} takes the option table from it instead of scanning the
+ * annotations of the runner class, and writes the values directly into the fields instead of going through reflection.
+ * When it is not found everything works as before.
+ */
+public interface GeneratedCLIParser
+{
+ String classNameSuffix="$CLIParser";
+
+ /**
+  * The classes declaring the fields of the option table, in table order
+  */
+ Class<?>[] declaringClasses();
+
+ /**
+  * The names of the fields of the option table, in table order
+  */
+ String[] fieldNames();
+
+ /**
+  * Fresh Settings for the fields of the option table, in table order
+  */
+ Settings[] settings();
+
+ /**
+  * Position in the option table of the option having the given name or alias, -1 when there's none
+  */
+ int dispatch(String name);
+
+ /**
+  * When false the field at the given position cannot be assigned directly (eg. because it is private) and reflection must be used
+  */
+ boolean isDirect(int position);
+
+ void set(Object instance, int position, Object value);
+
+ Object get(Object instance, int position);
+
+ /**
+  * The primitive setters write primitive fields without boxing, for any other field they behave like set
+  */
+ void setInt(Object instance, int position, int value);
+
+ void setLong(Object instance, int position, long value);
+
+ void setFloat(Object instance, int position, float value);
+
+ void setDouble(Object instance, int position, double value);
+
+ void setBoolean(Object instance, int position, boolean value);
+
+ /**
+  * True when the runner class has a field named commandLineHandler which {@link #setCommandLineHandler} writes directly
+  */
+ default boolean hasDirectCommandLineHandler()
+ {
+  return false;
+ }
+
+ default void setCommandLineHandler(Object instance, Object handler)
+ {
+  throw new IllegalStateException("No directly assignable commandLineHandler field");
+ }
+
+}
@@ -20,66 +20,115 @@ package me.as.lib.minicli;
 
 import me.as.lib.core.extra.BoxFor2;
 import me.as.lib.core.lang.ArrayExtras;
-import me.as.lib.core.lang.StringExtras;
 import me.as.lib.core.locale.Localizer;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import static me.as.lib.core.lang.StringExtras.hasChars;
 import static me.as.lib.core.lang.StringExtras.isBlank;
 import static me.as.lib.core.lang.StringExtras.isNotBlank;
 
 
+/**
+ * Prints the help of all the options and arguments. The help is rendered in a buffer and printed at once; the rendered text is
+ * cached in the schema per language and width (see {@link CLILocalizer}), so asking again for it (like embedded programs or daemons do)
+ * costs nothing.
+ * The width is the one of the terminal, see {@link #getTerminalColumns()}.
+ */
 public class HelpHandler implements CLIOptionHandler
 {
- Localizer localizer;
+ public static final int defaultColumns=80;
+ public static final int minColumns=40;
+ public static final int usagePadding=5;
+
+ private static volatile int terminalColumns=-1;
 
 
  public int handleOption(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
  {
-  localizer=handler.getLocalizer();
+  String help=render(handler.getSchema(), handler.getLocalizer(), getTerminalColumns(handler)-2);
+
+  handler.getOut().print(help);
+  handler.getOut().flush();
+
+  return 0;
+ }
+
+
+ /**
+  * The help of the options (in help order) and of the arguments of schema, with the usages wrapped at width
+  */
+ public static String render(CLISchema schema, Localizer localizer, int width)
+ {
+  String localeTag=localeTagOf(localizer);
+
+  if (localeTag==null)
+   return renderUncached(schema, localizer, width);
+
+  return schema.getRenderedHelp(localeTag, width, () -> renderUncached(schema, localizer, width));
+ }
+
+
+ /**
+  * The language of the texts of localizer: "" when there is no localizer, what it tells when it is a {@link CLILocalizer},
+  * otherwise null as it is unknown
+  */
+ static String localeTagOf(Localizer localizer)
+ {
+  if (localizer==null) return "";
+  if (localizer instanceof CLILocalizer) return ((CLILocalizer)localizer).getLocaleTag();
+  return null;
+ }
+
 
+ private static String renderUncached(CLISchema schema, Localizer localizer, int width)
+ {
+  String newLine=System.lineSeparator();
+  StringBuilder sb=new StringBuilder(4096);
   int t, len;
-  List<BoxFor2<Field, Settings>> allOptions=handler.getAllOptions();
+  List<BoxFor2<Field, Settings>> allOptions=new ArrayList<>(schema.getAllOptions());
 
-  allOptions=ArrayExtras.clone(allOptions);
+  allOptions.removeIf(o -> !o.element2.documented);
   allOptions.sort(Comparator.comparingInt(o -> o.element2.helpOrder));
 
-  allOptions.addAll(handler.getAllArguments());
+  allOptions.addAll(schema.getAllArguments());
 
 
   for (BoxFor2<Field, Settings> b2 : allOptions)
   {
    if (isBlank(b2.element2.name))
-    System.out.print("argument");
+    sb.append("argument");
    else
-    System.out.print(b2.element2.name);
+    sb.append(b2.element2.name);
 
    len=ArrayExtras.length(b2.element2.aliases);
 
    for (t=0;t<len;t++)
    {
     if (b2.element2.aliases[t].charAt(0)!='.')
-    {
-     System.out.print(" | ");
-     System.out.print(b2.element2.aliases[t]);
-    }
+     sb.append(" | ").append(b2.element2.aliases[t]);
    }
 
-   String operand=getLocalized(b2.element2.operand);
-   if (isNotBlank(operand)) System.out.print(" "+operand);
+   String operand=getLocalized(localizer, b2.element2.operand);
+   if (isNotBlank(operand)) sb.append(' ').append(operand);
 
-   System.out.println();
+   sb.append(newLine);
 
-   printUsage(b2);
+   String usage=getLocalized(localizer, b2.element2.usage);
+   if (usage!=null) wrap(usage, usagePadding, width, sb);
+   sb.append(newLine).append(newLine);
   }
 
-  return 0;
+  return sb.toString();
  }
 
- private String getLocalized(String source)
+
+ static String getLocalized(Localizer localizer, String source)
  {
   if (isNotBlank(source) && source.startsWith("§"))
    return localizer.getText(source.substring(1));
@@ -88,80 +137,175 @@ public class HelpHandler implements CLIOptionHandler
  }
 
 
- private void printUsage(BoxFor2<Field, Settings> b2)
+ /**
+  * The columns of the terminal: the COLUMNS environment variable when set, otherwise (only once, and only when there is a console)
+  * what stty tells, otherwise {@link #defaultColumns}. Never less than {@link #minColumns}
+  */
+ public static int getTerminalColumns()
+ {
+  return getTerminalColumns(System.getenv("COLUMNS"), true);
+ }
+
+ /**
+  * Like {@link #getTerminalColumns()} for the call handler is parsing: with its COLUMNS, and without asking stty when the call is not
+  * from the terminal of this JVM (see {@link CommandLineHandler#getContext()})
+  */
+ public static int getTerminalColumns(CommandLineHandler handler)
  {
-  System.out.println(formatLengthAndPadding(getLocalized(b2.element2.usage), 5, 78));
-  System.out.println();
+  return getTerminalColumns(handler.getEnvironmentVariable("COLUMNS"), handler.getContext()==null);
  }
 
 
- public static String formatLengthAndPadding(String text, int padding, int totalLength)
+ private static int getTerminalColumns(String columns, boolean askStty)
+ {
+  if (isNotBlank(columns))
+  {
+   try
+   {
+    return Math.max(minColumns, Integer.parseInt(columns.trim()));
+   }
+   catch (NumberFormatException ignore) {}
+  }
+
+  if (!askStty) return defaultColumns;
+
+  int res=terminalColumns;
+
+  if (res<0)
+   terminalColumns=res=Math.max(minColumns, askStty());
+
+  return res;
+ }
+
+
+ private static int askStty()
  {
-  StringBuilder sb=new StringBuilder();
-  String lines[]=StringExtras.toLines(text);
-  int t, len=ArrayExtras.length(lines);
+  if (System.console()==null || System.getProperty("os.name", "").startsWith("Windows")) return defaultColumns;
 
-  for (t=0;t<len;t++)
+  try
   {
-   if (t>0) sb.append("\n");
-   _i_formatLengthAndPadding(lines[t], sb, padding, totalLength);
+   Process process=new ProcessBuilder("sh", "-c", "stty size < /dev/tty").redirectErrorStream(true).start();
+
+   try (BufferedReader reader=new BufferedReader(new InputStreamReader(process.getInputStream())))
+   {
+    String size=reader.readLine();
+
+    if (process.waitFor(1, TimeUnit.SECONDS) && process.exitValue()==0 && size!=null)
+    {
+     String rowsAndColumns[]=size.trim().split("\\s+");
+     if (rowsAndColumns.length==2) return Integer.parseInt(rowsAndColumns[1]);
+    }
+   }
+   finally
+   {
+    process.destroy();
+   }
   }
+  catch (Exception ignore) {}
+
+  return defaultColumns;
+ }
+
 
+ public static String formatLengthAndPadding(String text, int padding, int totalLength)
+ {
+  StringBuilder sb=new StringBuilder(text.length()+text.length()/8+padding);
+  wrap(text, padding, totalLength, sb);
   return sb.toString();
  }
 
 
- private static void _i_formatLengthAndPadding(String line, StringBuilder totSb, int padding, int totalLength)
+ /*
+  * Appends text to sb with every line indented by padding and wrapped at width, in a single pass over text. Lines are broken at the
+  * last blank which fits, a word longer than the width gets a row of its own, and the rows following one with " - " in it are
+  * indented to just after the " - " (so that lists like "x - blah blah" wrap nicely)
+  */
+ static void wrap(CharSequence text, int padding, int width, StringBuilder sb)
  {
-  StringBuilder sb=new StringBuilder();
+  int from=0, to, len=text.length();
+
+  do
+  {
+   to=from;
+   while (to<len && text.charAt(to)!='\n') to++;
+
+   if (from>0) sb.append('\n');
+   wrapLine(text, from, (to>from && text.charAt(to-1)=='\r') ? to-1 : to, padding, width, sb);
+
+   from=to+1;
+  } while (to<len);
+ }
 
-  while (sb.length()<padding) sb.append(' ');
 
-  if (line.length()+padding>totalLength)
+ private static void wrapLine(CharSequence text, int from, int to, int padding, int width, StringBuilder sb)
+ {
+  int indent=padding;
+  int pos=from;
+
+  for (;;)
   {
-   boolean damnLongWord=false;
-   String truncated=(sb.toString()+line).substring(0, totalLength);
+   int rowStart=sb.length();
 
-   int idx=truncated.lastIndexOf(' ');
+   appendSpaces(sb, indent);
 
-   if (idx>0)
+   if (to-pos<=width-indent)
    {
-    truncated=truncated.substring(0, idx);
-    if (!isNotBlank(truncated)) damnLongWord=true;
+    sb.append(text, pos, to);
+    return;
    }
-   else
-    damnLongWord=true;
 
-   if (damnLongWord)
+   // the row ends at the last blank before the width, or after the first word when there is none
+   int end=pos+Math.max(0, width-indent-1);
+   int cut=end;
+
+   while (cut>pos && text.charAt(cut)!=' ') cut--;
+   while (cut>pos && text.charAt(cut-1)==' ') cut--;
+
+   if (cut==pos)
    {
-    idx=truncated.indexOf(' ', totalLength);
-    if (idx>0)
-    {
-     truncated=truncated.substring(0, idx);
-    } else truncated=null;
+    cut=pos;
+    while (cut<to && text.charAt(cut)==' ') cut++;
+    while (cut<to && text.charAt(cut)!=' ') cut++;
    }
 
-   if (hasChars(truncated))
-   {
-    sb.append(truncated.substring(padding)).append("\n");
-    String bt=StringExtras.betterTrim(truncated);
-    bt=StringExtras.betterTrim(line.substring(line.indexOf(bt)+bt.length()));
+   int next=cut, last=to;
 
-    int beterrPadding=truncated.indexOf(" - ");
-    beterrPadding=beterrPadding>0 ? beterrPadding+3 : padding;
+   while (next<to && text.charAt(next)==' ') next++;
+   while (last>next && Character.isWhitespace(text.charAt(last-1))) last--;
 
-    _i_formatLengthAndPadding(bt, sb, beterrPadding, totalLength);
-   }
-   else
-    sb.append(line);
+   sb.append(text, pos, cut);
+
+   if (next>=last) return;
+
+   int dash=indexOfDash(sb, rowStart);
+   if (dash>rowStart) indent=dash-rowStart+3;
+
+   sb.append('\n');
+   pos=next;
+   to=last;
+  }
+ }
+
+
+ private static int indexOfDash(StringBuilder sb, int from)
+ {
+  int t, len=sb.length()-2;
+
+  for (t=from;t<len;t++)
+  {
+   if (sb.charAt(t)==' ' && sb.charAt(t+1)=='-' && sb.charAt(t+2)==' ') return t;
   }
-  else
-   sb.append(line);
 
-  totSb.append(sb);
+  return -1;
  }
 
 
-}
+ private static final String spaces="                                                                                ";
 
+ private static void appendSpaces(StringBuilder sb, int count)
+ {
+  for (;count>spaces.length();count-=spaces.length()) sb.append(spaces);
+  sb.append(spaces, 0, count);
+ }
 
+}
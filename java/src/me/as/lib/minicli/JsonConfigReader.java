@@ -0,0 +1,314 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+
+
+/**
+ * A streaming reader of JSON config files: the top level object is read member by member, the values of the wanted keys are passed
+ * to a {@link ConfigSink} as soon as they are read and everything else is skipped without building anything.
+ *
+ * <p>
+ * Values can be strings, numbers (passed with their original text), true, false, null or arrays of those: objects, or arrays inside
+ * arrays, are accepted only under keys which are not wanted.
+ */
+final class JsonConfigReader
+{
+ private static final int bufferSize=8*1024;
+
+ private final Reader reader;
+ private final char buffer[]=new char[bufferSize];
+ private final StringBuilder sb=new StringBuilder();
+ private int pos=0;
+ private int limit=0;
+ private int line=1;
+ private int column=0;
+
+
+ private JsonConfigReader(Reader reader)
+ {
+  this.reader=reader;
+ }
+
+
+ static void read(Reader reader, Set<String> keys, ConfigSink sink) throws IOException
+ {
+  new JsonConfigReader(reader).readObject(keys, sink);
+ }
+
+
+ private void readObject(Set<String> keys, ConfigSink sink) throws IOException
+ {
+  expect('{');
+
+  int c=nextNonBlank();
+
+  if (c!='}')
+  {
+   for (;;)
+   {
+    if (c!='"') throw error("a key");
+
+    String key=readString();
+
+    expect(':');
+
+    if (keys.contains(key)) readValue(key, sink);
+     else skipValue();
+
+    c=nextNonBlank();
+    if (c=='}') break;
+    if (c!=',') throw error("',' or '}'");
+    c=nextNonBlank();
+   }
+  }
+
+  if (nextNonBlank()>=0) throw error("the end of the file");
+ }
+
+
+ private void readValue(String key, ConfigSink sink) throws IOException
+ {
+  int c=nextNonBlank();
+
+  if (c=='[')
+  {
+   sink.arrayStart(key);
+
+   c=nextNonBlank();
+
+   if (c!=']')
+   {
+    for (;;)
+    {
+     sink.arrayElement(key, readScalar(c, key));
+
+     c=nextNonBlank();
+     if (c==']') break;
+     if (c!=',') throw error("',' or ']'");
+     c=nextNonBlank();
+    }
+   }
+
+   sink.arrayEnd(key);
+  }
+  else
+   sink.value(key, readScalar(c, key));
+ }
+
+
+ private String readScalar(int c, String key) throws IOException
+ {
+  if (c=='"') return readString();
+  if (c=='{' || c=='[') throw new IOException("Unsupported value for key '"+key+"' at line "+line+": only strings, numbers, booleans, null or arrays of them are allowed");
+
+  String res=readLiteral(c);
+  return (res.equals("null") ? null : res);
+ }
+
+
+ // the opening " has already been read
+ private String readString() throws IOException
+ {
+  int c;
+
+  sb.setLength(0);
+
+  while ((c=next())!='"')
+  {
+   if (c<0 || c=='\n') throw error("the closing '\"'");
+
+   if (c=='\\')
+   {
+    switch (c=next())
+    {
+     case '"' :
+     case '\\':
+     case '/' : sb.append((char)c); break;
+     case 'b' : sb.append('\b'); break;
+     case 'f' : sb.append('\f'); break;
+     case 'n' : sb.append('\n'); break;
+     case 'r' : sb.append('\r'); break;
+     case 't' : sb.append('\t'); break;
+     case 'u' : sb.append(readHexChar()); break;
+     default  : throw error("a valid escape sequence");
+    }
+   }
+   else
+    sb.append((char)c);
+  }
+
+  return sb.toString();
+ }
+
+
+ private char readHexChar() throws IOException
+ {
+  int t, res=0;
+
+  for (t=0;t<4;t++)
+  {
+   int digit=Character.digit(next(), 16);
+   if (digit<0) throw error("4 hexadecimal digits");
+   res=(res<<4)+digit;
+  }
+
+  return (char)res;
+ }
+
+
+ // numbers, true, false and null
+ private String readLiteral(int c) throws IOException
+ {
+  sb.setLength(0);
+
+  while (isLiteralChar(c))
+  {
+   sb.append((char)c);
+   c=next();
+  }
+
+  if (sb.length()==0) throw error("a value");
+  pushBack();
+
+  String res=sb.toString();
+  c=res.charAt(0);
+
+  if (c=='t' || c=='f' || c=='n')
+  {
+   if (!res.equals("true") && !res.equals("false") && !res.equals("null")) throw error("a value");
+  }
+  else if (c!='-' && (c<'0' || c>'9'))
+   throw error("a value");
+
+  return res;
+ }
+
+
+ private void skipValue() throws IOException
+ {
+  int c=nextNonBlank(), depth=0;
+
+  for (;;)
+  {
+   if (c=='"')
+    skipString();
+   else if (c=='{' || c=='[')
+    depth++;
+   else if (c=='}' || c==']')
+   {
+    if (--depth<0) throw error("a value");
+   }
+   else if (isLiteralChar(c))
+   {
+    do c=next(); while (isLiteralChar(c));
+    pushBack();
+   }
+   else if (c!=',' && c!=':' || depth==0)
+    throw error("a value");
+
+   if (depth==0) return;
+   c=nextNonBlank();
+  }
+ }
+
+
+ private void skipString() throws IOException
+ {
+  int c;
+
+  while ((c=next())!='"')
+  {
+   if (c<0 || c=='\n') throw error("the closing '\"'");
+   if (c=='\\') next();
+  }
+ }
+
+
+ private static boolean isLiteralChar(int c)
+ {
+  return ((c>='0' && c<='9') || (c>='a' && c<='z') || c=='-' || c=='+' || c=='.' || c=='E');
+ }
+
+
+ private void expect(char what) throws IOException
+ {
+  if (nextNonBlank()!=what) throw error("'"+what+"'");
+ }
+
+
+ private int nextNonBlank() throws IOException
+ {
+  int c;
+
+  do c=next(); while (c==' ' || c=='\t' || c=='\n' || c=='\r');
+
+  return c;
+ }
+
+
+ private int next() throws IOException
+ {
+  if (pos==limit)
+  {
+   limit=reader.read(buffer, 0, bufferSize);
+   pos=0;
+
+   if (limit<=0)
+   {
+    limit=0;
+    return -1;
+   }
+  }
+
+  char c=buffer[pos++];
+
+  if (c=='\n')
+  {
+   line++;
+   column=0;
+  }
+  else
+   column++;
+
+  return c;
+ }
+
+
+ // only right after a next(), the char is still in the buffer
+ private void pushBack()
+ {
+  if (pos>0)
+  {
+   pos--;
+   if (buffer[pos]=='\n') line--;
+    else column--;
+  }
+ }
+
+
+ private IOException error(String expected)
+ {
+  return new IOException("Malformed JSON at line "+line+", column "+column+": expected "+expected);
+ }
+
+}
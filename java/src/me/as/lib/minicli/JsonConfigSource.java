@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+
+/**
+ * UTF-8 JSON config files, read in a streaming way by {@link JsonConfigReader}
+ */
+public class JsonConfigSource implements ConfigSource
+{
+
+ public String[] extensions()
+ {
+  return new String[]{"json"};
+ }
+
+
+ public void read(Path file, Set<String> keys, ConfigSink sink) throws IOException
+ {
+  try (Reader reader=Files.newBufferedReader(file, StandardCharsets.UTF_8))
+  {
+   JsonConfigReader.read(reader, keys, sink);
+  }
+ }
+
+}
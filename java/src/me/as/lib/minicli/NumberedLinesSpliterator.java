@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+
+/**
+ * Reads the lines of a text, numbering them, and splits in batches of a fixed size so that a parallel stream never holds
+ * more than a few batches in memory, whatever the size of the text.
+ */
+class NumberedLinesSpliterator implements Spliterator<NumberedLinesSpliterator.NumberedLine>
+{
+ static final int batchSize=1024;
+
+
+ static class NumberedLine
+ {
+  final long number;
+  final String text;
+
+  NumberedLine(long number, String text)
+  {
+   this.number=number;
+   this.text=text;
+  }
+ }
+
+
+ private final BufferedReader reader;
+ private long lineNumber=0;
+
+
+ NumberedLinesSpliterator(BufferedReader reader)
+ {
+  this.reader=reader;
+ }
+
+
+ private NumberedLine readLine()
+ {
+  try
+  {
+   String line=reader.readLine();
+   return (line!=null ? new NumberedLine(++lineNumber, line) : null);
+  }
+  catch (IOException ioe)
+  {
+   throw new UncheckedIOException(ioe);
+  }
+ }
+
+
+ public boolean tryAdvance(Consumer<? super NumberedLine> action)
+ {
+  NumberedLine line=readLine();
+
+  if (line!=null)
+  {
+   action.accept(line);
+   return true;
+  }
+
+  return false;
+ }
+
+
+ public Spliterator<NumberedLine> trySplit()
+ {
+  NumberedLine batch[]=new NumberedLine[batchSize];
+  NumberedLine line;
+  int len=0;
+
+  while (len<batchSize && (line=readLine())!=null)
+   batch[len++]=line;
+
+  return (len>0 ? Spliterators.spliterator(batch, 0, len, ORDERED | NONNULL) : null);
+ }
+
+
+ public long estimateSize()
+ {
+  return Long.MAX_VALUE;
+ }
+
+
+ public int characteristics()
+ {
+  return ORDERED | NONNULL;
+ }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Collects the values of a multi-valued operand into an array of the field type: int[], long[] and double[] are filled
+ * directly (never boxed), growing geometrically, and get trimmed to the right length only once, at the end.
+ * A List of String is filled as it is.
+ */
+abstract class OperandValues
+{
+
+ static boolean supports(Field field)
+ {
+  Class type=field.getType();
+
+  if (type==List.class)
+  {
+   Object elementType=StreamedValues.elementType(field);
+   return (elementType==null || elementType==String.class);
+  }
+
+  return (type==int[].class || type==long[].class || type==double[].class || type==String[].class);
+ }
+
+
+ static OperandValues forField(Field field)
+ {
+  Class type=field.getType();
+
+  if (type==int[].class) return new IntValues();
+  if (type==long[].class) return new LongValues();
+  if (type==double[].class) return new DoubleValues();
+  if (type==String[].class) return new StringValues();
+  if (type==List.class) return new ListValues();
+  return null;
+ }
+
+
+ /**
+  * Splits s on separator (when blank it is defaulted to File.pathSeparator) in a single pass and adds every value,
+  * returns the status of the first value which is not ok (its range is in failedFrom/failedTo) or ok
+  */
+ int addAll(String s, String separator)
+ {
+  separator=separatorOf(separator);
+
+  int from=0, to, len=s.length(), sepLen=separator.length();
+
+  if (len==0) return Operands.ok;
+
+  while (from<=len)
+  {
+   to=s.indexOf(separator, from);
+   if (to<0) to=len;
+
+   int status=add(s, from, to);
+
+   if (status!=Operands.ok)
+   {
+    failedFrom=from;
+    failedTo=to;
+    return status;
+   }
+
+   from=to+sepLen;
+  }
+
+  return Operands.ok;
+ }
+
+
+ static String separatorOf(Settings settings)
+ {
+  return separatorOf(settings.separator);
+ }
+
+ static String separatorOf(String separator)
+ {
+  return (separator==null || separator.length()==0 ? File.pathSeparator : separator);
+ }
+
+
+ int failedFrom;
+ int failedTo;
+ int size=0;
+
+ abstract int add(String s, int from, int to);
+ abstract Object toFieldValue();
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ static int grownCapacity(int capacity)
+ {
+  return (capacity<8 ? 8 : capacity+(capacity>>1));
+ }
+
+
+ static class IntValues extends OperandValues
+ {
+  int values[]=new int[8];
+
+  int add(String s, int from, int to)
+  {
+   int status=Operands.checkInt(s, from, to);
+
+   if (status==Operands.ok)
+   {
+    if (size==values.length) values=Arrays.copyOf(values, grownCapacity(size));
+    values[size++]=Operands.parseInt(s, from, to);
+   }
+
+   return status;
+  }
+
+  Object toFieldValue()
+  {
+   return (size==values.length ? values : Arrays.copyOf(values, size));
+  }
+ }
+
+
+ static class LongValues extends OperandValues
+ {
+  long values[]=new long[8];
+
+  int add(String s, int from, int to)
+  {
+   int status=Operands.checkLong(s, from, to);
+
+   if (status==Operands.ok)
+   {
+    if (size==values.length) values=Arrays.copyOf(values, grownCapacity(size));
+    values[size++]=Operands.parseLong(s, from, to);
+   }
+
+   return status;
+  }
+
+  Object toFieldValue()
+  {
+   return (size==values.length ? values : Arrays.copyOf(values, size));
+  }
+ }
+
+
+ static class DoubleValues extends OperandValues
+ {
+  double values[]=new double[8];
+
+  int add(String s, int from, int to)
+  {
+   int status=Operands.checkDouble(s, from, to);
+
+   if (status==Operands.ok)
+   {
+    if (size==values.length) values=Arrays.copyOf(values, grownCapacity(size));
+    values[size++]=Operands.parseDouble(s, from, to);
+   }
+
+   return status;
+  }
+
+  Object toFieldValue()
+  {
+   return (size==values.length ? values : Arrays.copyOf(values, size));
+  }
+ }
+
+
+ static class ListValues extends OperandValues
+ {
+  final ArrayList<String> values=new ArrayList<>();
+
+  int add(String s, int from, int to)
+  {
+   values.add(s.substring(from, to));
+   size++;
+   return Operands.ok;
+  }
+
+  Object toFieldValue()
+  {
+   return values;
+  }
+ }
+
+
+ static class StringValues extends OperandValues
+ {
+  String values[]=new String[8];
+
+  int add(String s, int from, int to)
+  {
+   if (size==values.length) values=Arrays.copyOf(values, grownCapacity(size));
+   values[size++]=s.substring(from, to);
+   return Operands.ok;
+  }
+
+  Object toFieldValue()
+  {
+   return (size==values.length ? values : Arrays.copyOf(values, size));
+  }
+ }
+
+}
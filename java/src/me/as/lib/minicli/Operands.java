@@ -0,0 +1,298 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+/**
+ * Parsing of operands which never throws: the check methods return a status and, when it is ok, the matching parse method
+ * can be called and is guaranteed to succeed. They work on a range of a CharSequence, so that no substring is needed.
+ */
+final class Operands
+{
+ static final int ok=0;
+ static final int missing=1;
+ static final int invalid=2;
+ static final int outOfRange=3;
+
+
+ private Operands(){}
+
+
+ static int checkInt(CharSequence s)
+ {
+  return (s==null ? missing : checkInteger(s, 0, s.length(), Integer.MIN_VALUE, Integer.MAX_VALUE));
+ }
+
+ static int checkLong(CharSequence s)
+ {
+  return (s==null ? missing : checkInteger(s, 0, s.length(), Long.MIN_VALUE, Long.MAX_VALUE));
+ }
+
+ static int checkDouble(CharSequence s)
+ {
+  return (s==null ? missing : checkDouble(s, 0, s.length()));
+ }
+
+
+ static int checkInt(CharSequence s, int from, int to)
+ {
+  return checkInteger(s, from, to, Integer.MIN_VALUE, Integer.MAX_VALUE);
+ }
+
+ static int checkLong(CharSequence s, int from, int to)
+ {
+  return checkInteger(s, from, to, Long.MIN_VALUE, Long.MAX_VALUE);
+ }
+
+
+ // optional sign followed by decimal digits, nothing else (like Long.parseLong)
+ private static int checkInteger(CharSequence s, int from, int to, long min, long max)
+ {
+  if (from>=to) return missing;
+
+  char c=s.charAt(from);
+  boolean negative=(c=='-');
+  int t=(negative || c=='+') ? from+1 : from;
+
+  if (t>=to) return invalid;
+
+  // accumulates negatively like Long.parseLong does, so that Long.MIN_VALUE fits
+  long limit=(negative ? min : -max);
+  long multmin=limit/10;
+  long res=0;
+
+  for (;t<to;t++)
+  {
+   int digit=s.charAt(t)-'0';
+   if (digit<0 || digit>9) return invalid;
+   if (res<multmin) return outOfRange;
+   res*=10;
+   if (res<limit+digit) return outOfRange;
+   res-=digit;
+  }
+
+  return ok;
+ }
+
+
+ static int parseInt(CharSequence s)
+ {
+  return (int)parseLong(s, 0, s.length());
+ }
+
+ static long parseLong(CharSequence s)
+ {
+  return parseLong(s, 0, s.length());
+ }
+
+ static int parseInt(CharSequence s, int from, int to)
+ {
+  return (int)parseLong(s, from, to);
+ }
+
+ // only after a successful check
+ static long parseLong(CharSequence s, int from, int to)
+ {
+  char c=s.charAt(from);
+  boolean negative=(c=='-');
+  int t=(negative || c=='+') ? from+1 : from;
+  long res=0;
+
+  for (;t<to;t++)
+   res=res*10-(s.charAt(t)-'0');
+
+  return (negative ? res : -res);
+ }
+
+
+ // the grammar of Double.valueOf: blanks around, sign, NaN, Infinity, decimal and hexadecimal forms, optional f/F/d/D suffix
+ static int checkDouble(CharSequence s, int from, int to)
+ {
+  while (from<to && s.charAt(from)<=' ') from++;
+  while (to>from && s.charAt(to-1)<=' ') to--;
+
+  if (from>=to) return missing;
+
+  int t=from;
+  char c=s.charAt(t);
+
+  if (c=='+' || c=='-') t++;
+
+  if (regionIs(s, t, to, "NaN") || regionIs(s, t, to, "Infinity")) return ok;
+
+  boolean hex=(t+1<to && s.charAt(t)=='0' && (s.charAt(t+1)=='x' || s.charAt(t+1)=='X'));
+  int digits=0;
+
+  if (hex) t+=2;
+
+  while (t<to && isDigit(s.charAt(t), hex)) { t++; digits++; }
+
+  if (t<to && s.charAt(t)=='.')
+  {
+   t++;
+   while (t<to && isDigit(s.charAt(t), hex)) { t++; digits++; }
+  }
+
+  if (digits==0) return invalid;
+
+  if (t<to && (hex ? (s.charAt(t)=='p' || s.charAt(t)=='P') : (s.charAt(t)=='e' || s.charAt(t)=='E')))
+  {
+   t++;
+   if (t<to && (s.charAt(t)=='+' || s.charAt(t)=='-')) t++;
+
+   int expDigits=0;
+   while (t<to && isDigit(s.charAt(t), false)) { t++; expDigits++; }
+
+   if (expDigits==0) return invalid;
+  }
+  else if (hex)
+   return invalid; // the binary exponent is mandatory in hexadecimal form
+
+  if (t<to && "fFdD".indexOf(s.charAt(t))>=0) t++;
+
+  return (t==to ? ok : invalid);
+ }
+
+
+ static double parseDouble(CharSequence s)
+ {
+  return parseDouble(s, 0, s.length());
+ }
+
+
+ private static final double powersOf10[]=
+ {
+  1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+ };
+
+ /*
+  * only after a successful check.
+  * Plain decimals with up to 15 significant digits and a power of ten up to 22 are both exact doubles, so a single
+  * multiplication or division gives the correctly rounded result without building any string: anything else goes to Double.parseDouble
+  */
+ static double parseDouble(CharSequence s, int from, int to)
+ {
+  long mantissa=0;
+  int digits=0, exponent=0, t=from;
+  boolean negative=false;
+  char c=s.charAt(t);
+
+  if (c=='+' || c=='-')
+  {
+   negative=(c=='-');
+   t++;
+  }
+
+  for (;t<to && (c=s.charAt(t))>='0' && c<='9';t++)
+  {
+   if (digits>0 || c!='0') digits++;
+   if (digits<=15) mantissa=mantissa*10+(c-'0');
+    else exponent++;
+  }
+
+  if (t<to && s.charAt(t)=='.')
+  {
+   for (t++;t<to && (c=s.charAt(t))>='0' && c<='9';t++)
+   {
+    if (digits>0 || c!='0') digits++;
+    if (digits<=15)
+    {
+     mantissa=mantissa*10+(c-'0');
+     exponent--;
+    }
+   }
+  }
+
+  if (t<to && (s.charAt(t)=='e' || s.charAt(t)=='E'))
+  {
+   int e=0;
+   boolean negativeE=false;
+
+   t++;
+   if (t<to && (s.charAt(t)=='+' || s.charAt(t)=='-')) negativeE=(s.charAt(t++)=='-');
+
+   for (;t<to && (c=s.charAt(t))>='0' && c<='9' && e<1000;t++)
+    e=e*10+(c-'0');
+
+   exponent+=(negativeE ? -e : e);
+  }
+
+  if (t==to && digits<=15 && exponent>=-22 && exponent<=22)
+  {
+   double res=(exponent<0 ? mantissa/powersOf10[-exponent] : mantissa*powersOf10[exponent]);
+   return (negative ? -res : res);
+  }
+
+  return Double.parseDouble(s.subSequence(from, to).toString());
+ }
+
+ static float parseFloat(CharSequence s)
+ {
+  return Float.parseFloat(s.toString());
+ }
+
+
+ private static boolean isDigit(char c, boolean hex)
+ {
+  return ((c>='0' && c<='9') || (hex && ((c>='a' && c<='f') || (c>='A' && c<='F'))));
+ }
+
+
+ private static boolean regionIs(CharSequence s, int from, int to, String what)
+ {
+  int t, len=what.length();
+
+  if (to-from!=len) return false;
+
+  for (t=0;t<len;t++)
+  {
+   if (s.charAt(from+t)!=what.charAt(t)) return false;
+  }
+
+  return true;
+ }
+
+
+ static final String trueValues[]={"true", "yes", "on"};
+ static final String falseValues[]={"false", "no", "off"};
+
+ static int checkBoolean(String s)
+ {
+  if (s==null) return missing;
+  return (indexOfIgnoreCase(trueValues, s)>=0 || indexOfIgnoreCase(falseValues, s)>=0) ? ok : invalid;
+ }
+
+ static boolean parseBoolean(String s)
+ {
+  return (indexOfIgnoreCase(trueValues, s)>=0);
+ }
+
+
+ private static int indexOfIgnoreCase(String values[], String s)
+ {
+  int t, len=values.length;
+
+  for (t=0;t<len;t++)
+  {
+   if (values[t].equalsIgnoreCase(s)) return t;
+  }
+
+  return -1;
+ }
+
+}
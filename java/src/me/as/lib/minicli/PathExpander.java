@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * Expands globs (the syntax of {@link java.nio.file.FileSystem#getPathMatcher}) into the paths they match.
+ *
+ * <p>
+ * The directories are walked starting from the longest leading part of the glob without wildcards, at most as deep as the glob can
+ * match (unless it contains **), every directory being listed by a task of its own on a fork-join pool: on slow (network) file systems
+ * the listings overlap instead of queuing. Symbolic links to directories are not followed and unreadable directories are skipped.
+ * The directories walked are resolved against the working directory of the call being parsed, the paths found are given as the glob
+ * wrote them (relative when it is relative).
+ */
+final class PathExpander
+{
+ private static final String globChars="*?[{";
+
+ // walking is mostly waiting for the file system, so more threads than cores pay off
+ private static final ForkJoinPool pool=new ForkJoinPool(Math.max(8, Runtime.getRuntime().availableProcessors()*2));
+
+
+ private PathExpander(){}
+
+
+ static boolean isGlob(String pattern)
+ {
+  return (indexOfGlobChar(pattern)>=0);
+ }
+
+
+ /**
+  * The paths matched by pattern or, when it is not a glob, just the path itself (existing or not); resolver resolves relative paths
+  * against the working directory of the call, see {@link CommandLineHandler#resolvePath(Path)}
+  */
+ static List<Path> expand(String pattern, boolean sorted, UnaryOperator<Path> resolver)
+ {
+  int globAt=indexOfGlobChar(pattern);
+
+  if (globAt<0)
+   return Collections.singletonList(Paths.get(pattern));
+
+  int baseEnd=Math.max(pattern.lastIndexOf('/', globAt), pattern.lastIndexOf(File.separatorChar, globAt));
+  Path base=Paths.get(baseEnd<0 ? "" : pattern.substring(0, baseEnd+1));
+  String glob=pattern.substring(baseEnd+1);
+
+  PathMatcher matcher=FileSystems.getDefault().getPathMatcher("glob:"+glob);
+  int maxDepth=(glob.contains("**") ? Integer.MAX_VALUE : countSegments(glob));
+
+  List<Path> res=pool.invoke(new WalkTask(matcher, maxDepth, base, resolver.apply(base), null, 0));
+  if (sorted) Collections.sort(res);
+  return res;
+ }
+
+
+ private static int indexOfGlobChar(String pattern)
+ {
+  int t, len=pattern.length();
+
+  for (t=0;t<len;t++)
+  {
+   if (globChars.indexOf(pattern.charAt(t))>=0) return t;
+  }
+
+  return -1;
+ }
+
+
+ private static int countSegments(String glob)
+ {
+  int t, len=glob.length(), res=1;
+
+  for (t=0;t<len;t++)
+  {
+   char c=glob.charAt(t);
+   if (c=='/' || c==File.separatorChar) res++;
+  }
+
+  return res;
+ }
+
+
+ private static class WalkTask extends RecursiveTask<List<Path>>
+ {
+  private final PathMatcher matcher;
+  private final int maxDepth;
+  private final Path base;
+  private final Path dir;
+  private final Path relative;
+  private final int depth;
+
+  // base is the start of the walk as the glob wrote it, dir the directory actually listed
+  WalkTask(PathMatcher matcher, int maxDepth, Path base, Path dir, Path relative, int depth)
+  {
+   this.matcher=matcher;
+   this.maxDepth=maxDepth;
+   this.base=base;
+   this.dir=dir;
+   this.relative=relative;
+   this.depth=depth;
+  }
+
+  protected List<Path> compute()
+  {
+   List<Path> res=new ArrayList<>();
+   List<WalkTask> subTasks=null;
+   boolean descend=(depth+1<maxDepth);
+
+   try (DirectoryStream<Path> entries=Files.newDirectoryStream(dir))
+   {
+    for (Path entry : entries)
+    {
+     Path name=entry.getFileName();
+     Path entryRelative=(relative==null ? name : relative.resolve(name));
+
+     if (matcher.matches(entryRelative)) res.add(base.resolve(entryRelative));
+
+     if (descend && isDirectory(entry))
+     {
+      WalkTask task=new WalkTask(matcher, maxDepth, base, entry, entryRelative, depth+1);
+      task.fork();
+
+      if (subTasks==null) subTasks=new ArrayList<>();
+      subTasks.add(task);
+     }
+    }
+   }
+   catch (IOException ignore) {}
+
+   if (subTasks!=null)
+   {
+    for (WalkTask task : subTasks)
+     res.addAll(task.join());
+   }
+
+   return res;
+  }
+ }
+
+
+ private static boolean isDirectory(Path path)
+ {
+  try
+  {
+   return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+  }
+  catch (IOException ioe)
+  {
+   return false;
+  }
+ }
+
+}
@@ -14,21 +14,51 @@
  * the License.
  */
 
-
 package me.as.lib.minicli;
 
 
 import me.as.lib.core.extra.BoxFor2;
 
+import java.io.File;
 import java.lang.reflect.Field;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 
+/**
+ * For Path, File and String fields which hold a path
+ */
 public class PathHandler extends BasicCLIOptionHandlers.StringCLIOptionHandler
 {
 
- protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+ protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
+ {
+  if (operand==null) return 1;
+
+  Class type=option.element1.getType();
+
+  try
+  {
+   if (type==Path.class)
+    handler.setFieldValue(option, Paths.get(operand));
+   else if (type==File.class)
+    handler.setFieldValue(option, new File(operand));
+   else
+    handler.setFieldValue(option, operand);
+  }
+  catch (InvalidPathException ipe)
+  {
+   handler.getProblems().addShowStopper("Invalid path '"+operand+"' for option "+option.element2.name+": "+ipe.getMessage());
+  }
+
+  return 1;
+ }
+
+
+ static boolean supports(Field field)
  {
-  super.setFieldValue(handler, argsPos, option);
+  return (field.getType()==Path.class || field.getType()==File.class);
  }
 
 }
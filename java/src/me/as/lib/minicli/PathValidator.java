@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.extra.BoxFor2;
+import me.as.lib.core.report.Problems;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+
+/**
+ * Checks the paths of the fields having a {@link CLIPath} which asks for it, all of them in one go: a stat on a network filesystem can
+ * take long, so the paths are checked many at a time (on virtual threads when the JVM has them) and a path which takes longer than
+ * its timeout is reported as failed instead of blocking the parsing.
+ */
+final class PathValidator
+{
+ static final int maxPlatformThreads=32;
+ static final int maxVirtualThreads=256;
+
+
+ private PathValidator(){}
+
+
+ static boolean needsValidation(Field field)
+ {
+  CLIPath cliPath=field.getAnnotation(CLIPath.class);
+  return (cliPath!=null && (cliPath.mustExist() || cliPath.readable() || cliPath.directory() || cliPath.file()));
+ }
+
+
+ /**
+  * Adds to problems a show stopper for every path which does not pass the checks of its field. Values which are not paths (like
+  * streamed ones) are not checked. The paths are checked as resolver resolves them (against the working directory of the call, see
+  * {@link CommandLineHandler#resolvePath(Path)}) but reported as they are
+  */
+ static void validate(List<BoxFor2<Field, Settings>> fields, Function<BoxFor2<Field, Settings>, Object> valueOf, UnaryOperator<Path> resolver,
+                      Problems problems)
+ {
+  ArrayList<Check> checks=new ArrayList<>();
+
+  for (BoxFor2<Field, Settings> field : fields)
+  {
+   CLIPath rules=field.element1.getAnnotation(CLIPath.class);
+   String name=(field.element2.type==Settings.Type.option ? "option "+field.element2.name : "argument '"+field.element1.getName()+"'");
+   Object value=valueOf.apply(field);
+
+   if (value instanceof Object[])
+   {
+    for (Object element : (Object[])value) addCheck(checks, element, rules, name, resolver);
+   }
+   else if (value instanceof Collection)
+   {
+    for (Object element : (Collection)value) addCheck(checks, element, rules, name, resolver);
+   }
+   else
+    addCheck(checks, value, rules, name, resolver);
+  }
+
+  if (checks.isEmpty()) return;
+
+  // also a single check runs on a thread of its own: on a hung mount it would block the parsing forever
+  runAll(checks);
+
+  for (Check check : checks)
+  {
+   if (check.failure!=null) problems.addShowStopper("The path '"+check.path+"' of "+check.name+" "+check.failure);
+  }
+ }
+
+
+ private static void addCheck(List<Check> checks, Object element, CLIPath rules, String name, UnaryOperator<Path> resolver)
+ {
+  Path path;
+
+  try
+  {
+   if (element instanceof Path) path=(Path)element;
+    else if (element instanceof File) path=((File)element).toPath();
+    else if (element instanceof String) path=Paths.get((String)element);
+    else return;
+  }
+  catch (InvalidPathException ipe)
+  {
+   return; // already reported while binding it
+  }
+
+  checks.add(new Check(path, resolver.apply(path), rules, name));
+ }
+
+
+ private static void runAll(List<Check> checks)
+ {
+  boolean virtual[]={false};
+  ThreadFactory threadFactory=threadFactory(virtual);
+  int threads=Math.min(checks.size(), (virtual[0] ? maxVirtualThreads : maxPlatformThreads));
+  ExecutorService pool=Executors.newFixedThreadPool(threads, threadFactory);
+
+  try
+  {
+   checks.forEach(pool::execute);
+
+   // a check times out timeoutMillis after it actually started, the queued ones wait for a free thread: only if one has not started
+   // when every thread could have gone through its share of the checks, each taking the longest timeout, the pool is stuck
+   long longest=0;
+   for (Check check : checks) longest=Math.max(longest, check.rules.timeoutMillis());
+
+   long deadline=System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(longest)*((checks.size()+threads-1)/threads);
+
+   for (Check check : checks)
+   {
+    long timeout=TimeUnit.MILLISECONDS.toNanos(check.rules.timeoutMillis());
+
+    if (check.started.await(deadline-System.nanoTime(), TimeUnit.NANOSECONDS) &&
+        check.done.await(check.startedAt+timeout-System.nanoTime(), TimeUnit.NANOSECONDS))
+     check.failure=check.result;
+    else
+     check.failure="could not be checked in "+check.rules.timeoutMillis()+" ms";
+   }
+  }
+  catch (InterruptedException ie)
+  {
+   Thread.currentThread().interrupt();
+   checks.forEach(c -> c.failure=(c.done.getCount()>0 ? "has not been checked (interrupted)" : c.result));
+  }
+  finally
+  {
+   pool.shutdownNow();
+  }
+ }
+
+
+ // virtual threads where the JVM has them (Thread.ofVirtual() since Java 21), daemon platform threads otherwise
+ private static ThreadFactory threadFactory(boolean virtual[])
+ {
+  try
+  {
+   Object builder=Thread.class.getMethod("ofVirtual").invoke(null);
+   ThreadFactory res=(ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+   virtual[0]=true;
+   return res;
+  }
+  catch (ReflectiveOperationException | RuntimeException e)
+  {
+   return r ->
+   {
+    Thread res=new Thread(r, "minicli-path-check");
+    res.setDaemon(true);
+    return res;
+   };
+  }
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private static class Check implements Runnable
+ {
+  final Path path;
+  final Path checked;
+  final CLIPath rules;
+  final String name;
+  final CountDownLatch started=new CountDownLatch(1);
+  final CountDownLatch done=new CountDownLatch(1);
+  volatile long startedAt;
+  volatile String result;
+  String failure;
+
+  Check(Path path, Path checked, CLIPath rules, String name)
+  {
+   this.path=path;
+   this.checked=checked;
+   this.rules=rules;
+   this.name=name;
+  }
+
+
+  public void run()
+  {
+   startedAt=System.nanoTime();
+   started.countDown();
+
+   try
+   {
+    result=check();
+   }
+   finally
+   {
+    done.countDown();
+   }
+  }
+
+
+  // one stat for existence and type, plus an access check only when readable is asked
+  private String check()
+  {
+   BasicFileAttributes attributes;
+
+   try
+   {
+    attributes=Files.readAttributes(checked, BasicFileAttributes.class);
+   }
+   catch (NoSuchFileException nsfe)
+   {
+    return "does not exist";
+   }
+   catch (IOException | SecurityException e)
+   {
+    return "cannot be accessed: "+e.getMessage();
+   }
+
+   if (rules.directory() && !attributes.isDirectory()) return "is not a directory";
+   if (rules.file() && !attributes.isRegularFile()) return "is not a file";
+   if (rules.readable() && !Files.isReadable(checked)) return "is not readable";
+
+   return null;
+  }
+ }
+
+}
@@ -14,23 +14,73 @@
  * the License.
  */
 
-
 package me.as.lib.minicli;
 
 
-import me.as.lib.core.StillUnimplemented;
 import me.as.lib.core.extra.BoxFor2;
 
 import java.lang.reflect.Field;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 
+/**
+ * For Path[] and List&lt;Path&gt; fields: the operand is split on the separator of the option (see {@link CLIOption#separator()}) and
+ * every part which is a glob is expanded (see {@link CLIPath})
+ */
 public class PathsHandler extends BasicCLIOptionHandlers.StringCLIOptionHandler
 {
 
- protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+ protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
+ {
+  if (operand==null) return 1;
+
+  CLIPath cliPath=option.element1.getAnnotation(CLIPath.class);
+  boolean sorted=(cliPath!=null && cliPath.sorted());
+  String separator=OperandValues.separatorOf(option.element2);
+  ArrayList<Path> paths=new ArrayList<>();
+  int from=0, to, len=operand.length();
+
+  while (from<len)
+  {
+   to=operand.indexOf(separator, from);
+   if (to<0) to=len;
+
+   if (to>from)
+   {
+    String pattern=operand.substring(from, to);
+
+    try
+    {
+     paths.addAll(PathExpander.expand(pattern, sorted, handler::resolvePath));
+    }
+    catch (IllegalArgumentException iae)
+    {
+     handler.getProblems().addShowStopper("Invalid path '"+pattern+"' for option "+option.element2.name+": "+iae.getMessage());
+     return 1;
+    }
+   }
+
+   from=to+separator.length();
+  }
+
+  handler.setFieldValue(option, toFieldValue(option.element1.getType(), paths));
+  return 1;
+ }
+
+
+ static Object toFieldValue(Class type, List<Path> paths)
+ {
+  if (type==Path[].class) return paths.toArray(new Path[paths.size()]);
+  return paths;
+ }
+
+
+ static boolean supports(Field field)
  {
-//  super.setFieldValue(handler, argsPos, option);
-  throw new StillUnimplemented();
+  Class type=field.getType();
+  return (type==Path[].class || ((type==List.class || type==ArrayList.class) && StreamedValues.elementType(field)==Path.class));
  }
 
 }
@@ -18,19 +18,137 @@
 package me.as.lib.minicli;
 
 
-import me.as.lib.core.StillUnimplemented;
 import me.as.lib.core.extra.BoxFor2;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 
+/**
+ * For classpath like options: directories, jars and zips separated by the separator of the option (by default the
+ * {@link File#pathSeparator}). Like with java -cp, an element like dir/* stands for all the jars and zips in dir; any other glob is
+ * expanded like {@link PathsHandler} does, sorted.
+ *
+ * <p>
+ * A {@link ClassPath} field gets the elements with the merged index of all the entries of the archives (cached on disk, see
+ * {@link ClassPath#cacheDirectoryProperty}); a String field gets the expanded classpath and Path[] or List&lt;Path&gt; fields
+ * get its elements.
+ */
 public class PathsJarsZipsHandler extends BasicCLIOptionHandlers.StringCLIOptionHandler
 {
 
- protected void setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
+ protected int setFieldValue(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option, String operand)
+ {
+  if (operand==null) return 1;
+
+  String separator=OperandValues.separatorOf(option.element2);
+  ArrayList<Path> roots=new ArrayList<>();
+  int from=0, to, len=operand.length();
+
+  while (from<len)
+  {
+   to=operand.indexOf(separator, from);
+   if (to<0) to=len;
+
+   if (to>from)
+   {
+    String element=operand.substring(from, to);
+
+    try
+    {
+     if (isArchivesWildcard(element)) roots.addAll(archivesIn(handler, Paths.get(element.substring(0, element.length()-1))));
+      else roots.addAll(PathExpander.expand(element, true, handler::resolvePath));
+    }
+    catch (IllegalArgumentException | IOException e)
+    {
+     handler.getProblems().addShowStopper("Invalid classpath element '"+element+"' for option "+option.element2.name+": "+e.getMessage());
+     return 1;
+    }
+   }
+
+   from=to+separator.length();
+  }
+
+  Class type=option.element1.getType();
+  Object value;
+
+  if (type==ClassPath.class)
+  {
+   try
+   {
+    ArrayList<Path> resolved=new ArrayList<>();
+    for (Path root : roots) resolved.add(handler.resolvePath(root));
+
+    value=ArchiveIndexer.index(resolved, ClassPath.getCacheDirectory());
+   }
+   catch (IllegalArgumentException | IOException e)
+   {
+    handler.getProblems().addShowStopper("Invalid classpath for option "+option.element2.name+": "+e.getMessage());
+    return 1;
+   }
+  }
+  else if (type==String.class)
+  {
+   StringBuilder sb=new StringBuilder();
+
+   for (Path root : roots)
+   {
+    if (sb.length()>0) sb.append(separator);
+    sb.append(root);
+   }
+
+   value=sb.toString();
+  }
+  else value=PathsHandler.toFieldValue(type, roots);
+
+  handler.setFieldValue(option, value);
+  return 1;
+ }
+
+
+ // dir/* or a bare *, like java -cp: only the last name can be the wildcard
+ private static boolean isArchivesWildcard(String element)
+ {
+  int len=element.length();
+  return (element.endsWith("*") && (len==1 || element.charAt(len-2)=='/' || element.charAt(len-2)==File.separatorChar) &&
+          !PathExpander.isGlob(element.substring(0, len-1)));
+ }
+
+
+ // listed in the working directory of the call, given as dir wrote them
+ private static List<Path> archivesIn(CommandLineHandler handler, Path dir) throws IOException
+ {
+  if (dir.toString().isEmpty()) dir=Paths.get(".");
+
+  Path listed=handler.resolvePath(dir);
+  if (!Files.isDirectory(listed)) throw new IOException("'"+dir+"' is not a directory");
+
+  ArrayList<Path> res=new ArrayList<>();
+
+  try (DirectoryStream<Path> entries=Files.newDirectoryStream(listed))
+  {
+   for (Path entry : entries)
+   {
+    if (ClassPath.isArchive(entry) && Files.isRegularFile(entry)) res.add(dir.resolve(entry.getFileName()));
+   }
+  }
+
+  Collections.sort(res);
+  return res;
+ }
+
+
+ static boolean supports(Field field)
  {
-//  super.setFieldValue(handler, argsPos, option);
-  throw new StillUnimplemented();
+  return (field.getType()==ClassPath.class);
  }
 
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+
+package me.as.lib.minicli;
+
+
+import me.as.lib.core.extra.BoxFor2;
+import me.as.lib.core.lang.ClassExtras;
+import me.as.lib.core.locale.Localizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static me.as.lib.core.lang.StringExtras.isNotBlank;
+
+
+/**
+ * Help and version texts rendered at build time, so that a program called with just --help or -version (or their aliases) prints
+ * them without building the schema of its runner class at all, see {@link CommandLineHandler#prepare}.
+ *
+ * <p>
+ * Run it after compiling, before packaging (with exec-maven-plugin, a Gradle JavaExec task or the like):
+ * <pre>
+ * java -cp &lt;classpath&gt; me.as.lib.minicli.PrerenderedTexts &lt;classes dir&gt; &lt;runner class&gt; [&lt;locale tag&gt;=&lt;Localizer class&gt; ...]
+ * </pre>
+ * It writes in META-INF/minicli/&lt;runner class&gt;/ of the classes dir:
+ * <ul>
+ * <li>help.txt, the help as {@link HelpHandler} renders it on a terminal of {@link HelpHandler#defaultColumns} columns</li>
+ * <li>help_&lt;locale tag&gt;.txt for every Localizer given, used when the program is prepared with a Localizer telling that tag (see
+ * {@link CLILocalizer}); with any other Localizer the help is rendered at runtime</li>
+ * <li>version.txt, the customContent of the version option (see {@link VersionCLIOption}) of a new instance of the runner</li>
+ * <li>names, the names and aliases of the help and version options, with the text each one prints</li>
+ * </ul>
+ * The help is used as is only when the terminal has the same columns, as told by the COLUMNS environment variable or, when it is not
+ * set and the program runs on a console, by the terminal itself: otherwise the program goes the normal way and renders it for the
+ * terminal. Remember to run this again whenever the options change.
+ */
+public final class PrerenderedTexts
+{
+ static final String resourcesRoot="META-INF/minicli/";
+ static final String namesResource="names";
+ static final String helpResource="help";
+ static final String versionResource="version.txt";
+
+
+ private PrerenderedTexts(){}
+
+
+ public static void main(String args[]) throws Exception
+ {
+  if (args.length<2)
+  {
+   System.err.println("Usage: PrerenderedTexts <classes dir> <runner class> [<locale tag>=<Localizer class> ...]");
+   System.exit(1);
+  }
+
+  Map<String, Localizer> localizers=new LinkedHashMap<>();
+  int t;
+
+  for (t=2;t<args.length;t++)
+  {
+   int eq=args[t].indexOf('=');
+   if (eq<=0) throw new IllegalArgumentException("Expected <locale tag>=<Localizer class> instead of '"+args[t]+"'");
+   localizers.put(args[t].substring(0, eq), (Localizer)ClassExtras.newInstanceByClass(Class.forName(args[t].substring(eq+1))));
+  }
+
+  write(Class.forName(args[1]), Paths.get(args[0]), localizers);
+ }
+
+
+ /**
+  * Writes the texts of runnerClass under outputDirectory (usually the directory of the compiled classes); localizers maps locale
+  * tags (like it or en-GB) to the Localizer giving the help in that language
+  */
+ public static void write(Class<?> runnerClass, Path outputDirectory, Map<String, Localizer> localizers) throws IOException
+ {
+  CLISchema schema=CLISchema.of(runnerClass);
+  Path dir=outputDirectory.resolve(resourcesRoot+runnerClass.getName());
+  StringBuilder names=new StringBuilder();
+  int width=HelpHandler.defaultColumns-2;
+
+  Files.createDirectories(dir);
+
+  for (BoxFor2<Field, Settings> option : schema.getAllOptions())
+  {
+   Class handlerClass=option.element2.optionHandlerClass;
+   String text;
+
+   if (handlerClass==HelpHandler.class)
+   {
+    text=helpResource;
+
+    Files.write(dir.resolve(helpResource+".txt"), HelpHandler.render(schema, null, width).getBytes(StandardCharsets.UTF_8));
+
+    for (Map.Entry<String, Localizer> localizer : localizers.entrySet())
+    {
+     Files.write(dir.resolve(helpResource+"_"+localizer.getKey()+".txt"),
+      HelpHandler.render(schema, localizer.getValue(), width).getBytes(StandardCharsets.UTF_8));
+    }
+   }
+   else if (handlerClass==VersionHandler.class)
+   {
+    Object version=schema.getBinder(option.element2).get(ClassExtras.newInstanceByClass(runnerClass));
+    if (!(version instanceof NoOperand) || ((NoOperand)version).customContent==null) continue;
+
+    text=versionResource;
+    Files.write(dir.resolve(versionResource), String.valueOf(((NoOperand)version).customContent).getBytes(StandardCharsets.UTF_8));
+   }
+   else continue;
+
+   names.append(option.element2.name).append('\t').append(text).append('\n');
+
+   if (option.element2.aliases!=null)
+   {
+    for (String alias : option.element2.aliases)
+     names.append(alias.startsWith(".") ? alias.substring(1) : alias).append('\t').append(text).append('\n');
+   }
+  }
+
+  names.append("#columns\t").append(HelpHandler.defaultColumns).append('\n');
+  Files.write(dir.resolve(namesResource), names.toString().getBytes(StandardCharsets.UTF_8));
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ // from the names of the prerendered options to their texts, empty when the class has none
+ private static final ClassValue<Map<String, String>> namesByClass=new ClassValue<Map<String, String>>()
+ {
+  protected Map<String, String> computeValue(Class<?> type)
+  {
+   String text=readResource(type, namesResource);
+   if (text==null) return Collections.emptyMap();
+
+   Map<String, String> res=new HashMap<>();
+
+   for (String line : text.split("\n"))
+   {
+    int tab=line.indexOf('\t');
+    if (tab>0) res.put(line.substring(0, tab), line.substring(tab+1));
+   }
+
+   return res;
+  }
+ };
+
+
+ /**
+  * When args is just a help or version option and its text has been prerendered for clazz, prints it and returns true; context is the
+  * call, with its environment and streams (see {@link CommandLineHandler#getContext()}), null for this JVM
+  */
+ static boolean print(Class<?> clazz, String args[], Localizer localizer, CLIContext context)
+ {
+  if (args==null || args.length!=1) return false;
+
+  Map<String, String> names=namesByClass.get(clazz);
+  String what=(names.isEmpty() ? null : names.get(args[0]));
+
+  if (what==null) return false;
+
+  PrintStream out=(context==null ? System.out : context.out);
+  String text;
+
+  if (what.equals(helpResource))
+  {
+   String columns=(context==null ? System.getenv("COLUMNS") : context.environment.get("COLUMNS"));
+   if (isNotBlank(columns))
+   {
+    if (!columns.trim().equals(names.get("#columns"))) return false;
+   }
+   else if (context==null && System.console()!=null)
+   {
+    // what HelpHandler would render for, asked once per JVM
+    if (!String.valueOf(HelpHandler.getTerminalColumns()).equals(names.get("#columns"))) return false;
+   }
+
+   // in the language of localizer, when it tells which one it is, see CLILocalizer
+   String localeTag=HelpHandler.localeTagOf(localizer);
+   if (localeTag==null) return false;
+
+   text=readResource(clazz, (localeTag.isEmpty() ? helpResource+".txt" : helpResource+"_"+localeTag+".txt"));
+   if (text==null) return false;
+
+   out.print(text);
+  }
+  else
+  {
+   text=readResource(clazz, what);
+   if (text==null) return false;
+
+   out.println(text);
+  }
+
+  out.flush();
+  return true;
+ }
+
+
+ static String readResource(Class<?> clazz, String name)
+ {
+  ClassLoader loader=clazz.getClassLoader();
+  String path=resourcesRoot+clazz.getName()+"/"+name;
+
+  try (InputStream in=(loader!=null ? loader.getResourceAsStream(path) : ClassLoader.getSystemResourceAsStream(path)))
+  {
+   if (in==null) return null;
+
+   ByteArrayOutputStream bytes=new ByteArrayOutputStream(4096);
+   byte buffer[]=new byte[8192];
+   int read;
+
+   while ((read=in.read(buffer))>0) bytes.write(buffer, 0, read);
+
+   return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+  catch (IOException ioe)
+  {
+   throw new UncheckedIOException(ioe);
+  }
+ }
+
+}
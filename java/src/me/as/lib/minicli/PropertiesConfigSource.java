@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package me.as.lib.minicli;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+
+/**
+ * UTF-8 .properties config files, with the syntax of {@link java.util.Properties#load(java.io.Reader)}: the keys are read line by line
+ * and only the values of the wanted ones are unescaped. Every value is a scalar (an option with many values takes them split by its
+ * separator).
+ */
+public class PropertiesConfigSource implements ConfigSource
+{
+
+ public String[] extensions()
+ {
+  return new String[]{"properties"};
+ }
+
+
+ public void read(Path file, Set<String> keys, ConfigSink sink) throws IOException
+ {
+  StringBuilder sb=new StringBuilder();
+  StringBuilder logical=new StringBuilder();
+
+  try (BufferedReader reader=Files.newBufferedReader(file, StandardCharsets.UTF_8))
+  {
+   String line;
+
+   while ((line=reader.readLine())!=null)
+   {
+    int t=skipBlanks(line, 0);
+
+    if (t==line.length() || line.charAt(t)=='#' || line.charAt(t)=='!') continue;
+
+    if (isContinued(line))
+    {
+     logical.setLength(0);
+     logical.append(line, t, line.length()-1);
+
+     while ((line=reader.readLine())!=null)
+     {
+      boolean continued=isContinued(line);
+      logical.append(line, skipBlanks(line, 0), line.length()-(continued ? 1 : 0));
+      if (!continued) break;
+     }
+
+     line=logical.toString();
+     t=0;
+    }
+
+    sb.setLength(0);
+    t=unescape(line, t, true, sb);
+
+    String key=sb.toString();
+
+    if (keys.contains(key))
+    {
+     t=skipBlanks(line, t);
+     if (t<line.length() && (line.charAt(t)=='=' || line.charAt(t)==':')) t=skipBlanks(line, t+1);
+
+     sb.setLength(0);
+     unescape(line, t, false, sb);
+     sink.value(key, sb.toString());
+    }
+   }
+  }
+ }
+
+
+ // an odd number of backslashes at the end
+ private static boolean isContinued(String line)
+ {
+  int t=line.length()-1, count=0;
+
+  while (t>=0 && line.charAt(t--)=='\\') count++;
+
+  return ((count&1)==1);
+ }
+
+
+ private static int skipBlanks(String line, int from)
+ {
+  int len=line.length();
+
+  while (from<len && (line.charAt(from)==' ' || line.charAt(from)=='\t' || line.charAt(from)=='\f')) from++;
+
+  return from;
+ }
+
+
+ // returns where it stopped: the end of the line, or the first unescaped separator when reading a key
+ private static int unescape(String line, int from, boolean key, StringBuilder sb) throws IOException
+ {
+  int t, len=line.length();
+
+  for (t=from;t<len;t++)
+  {
+   char c=line.charAt(t);
+
+   if (c=='\\' && t+1<len)
+   {
+    c=line.charAt(++t);
+
+    switch (c)
+    {
+     case 't': c='\t'; break;
+     case 'n': c='\n'; break;
+     case 'r': c='\r'; break;
+     case 'f': c='\f'; break;
+     case 'u':
+      if (t+4>=len) throw new IOException("Malformed \\uxxxx encoding in line: "+line);
+      try { c=(char)Integer.parseInt(line.substring(t+1, t+5), 16); }
+      catch (NumberFormatException nfe) { throw new IOException("Malformed \\uxxxx encoding in line: "+line); }
+      t+=4;
+      break;
+    }
+   }
+   else if (key && (c=='=' || c==':' || c==' ' || c=='\t' || c=='\f'))
+    return t;
+
+   sb.append(c);
+  }
+
+  return t;
+ }
+
+}
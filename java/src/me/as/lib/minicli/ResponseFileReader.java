@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+
+/**
+ * Reads the args contained in a response file, the file named by an arg like @file on the command line.
+ *
+ * <p>
+ * The file is read in chunks and split while reading, so it is never loaded in memory as a whole: it can be as big as needed.
+ * The rules are these:
+ * <ul>
+ * <li>the file is UTF-8 encoded</li>
+ * <li>args are separated by blanks (spaces, tabs, new lines)</li>
+ * <li>a # at the beginning of an arg starts a comment which ends with the line</li>
+ * <li>inside single quotes everything is taken literally</li>
+ * <li>inside double quotes a backslash escapes " and \, any other backslash is taken literally</li>
+ * <li>elsewhere a backslash escapes blanks, quotes, # and \, any other backslash is taken literally (so that C:\dir works)</li>
+ * </ul>
+ * Response files cannot include other response files: an @something inside a response file is just an arg.
+ * To pass on the command line an arg which really starts with @ write it as @@something.
+ */
+class ResponseFileReader implements Closeable
+{
+ static final int chunkSize=64*1024;
+
+ private final FileChannel channel;
+ private final CharsetDecoder decoder;
+ private final ByteBuffer bytes=ByteBuffer.allocate(chunkSize);
+ private final CharBuffer chars=CharBuffer.allocate(chunkSize);
+ private final StringBuilder sb=new StringBuilder();
+ private final ArrayList<String> lookahead=new ArrayList<>();
+ private boolean endOfInput=false;
+
+
+ ResponseFileReader(Path file) throws IOException
+ {
+  channel=FileChannel.open(file, StandardOpenOption.READ);
+  decoder=StandardCharsets.UTF_8.newDecoder()
+   .onMalformedInput(CodingErrorAction.REPORT)
+   .onUnmappableCharacter(CodingErrorAction.REPORT);
+  chars.flip();
+ }
+
+
+ /**
+  * The next arg, null at the end of the file
+  */
+ String next() throws IOException
+ {
+  if (lookahead.size()>0) return lookahead.remove(0);
+  return readArg();
+ }
+
+
+ /**
+  * The arg that the (n+1)th call to next() would return, without consuming it
+  */
+ String peek(int n) throws IOException
+ {
+  while (lookahead.size()<=n)
+  {
+   String arg=readArg();
+   if (arg==null) return null;
+   lookahead.add(arg);
+  }
+
+  return lookahead.get(n);
+ }
+
+
+ public void close() throws IOException
+ {
+  channel.close();
+ }
+
+
+ private int nextChar() throws IOException
+ {
+  while (!chars.hasRemaining())
+  {
+   if (endOfInput) return -1;
+
+   chars.clear();
+   int read=channel.read(bytes);
+   bytes.flip();
+
+   CoderResult cr=decoder.decode(bytes, chars, read<0);
+   if (cr.isError()) cr.throwException();
+
+   if (read<0)
+   {
+    decoder.flush(chars);
+    endOfInput=true;
+   }
+
+   bytes.compact();
+   chars.flip();
+  }
+
+  return chars.get();
+ }
+
+
+ private String readArg() throws IOException
+ {
+  int c;
+
+  do
+  {
+   c=nextChar();
+
+   if (c=='#')
+   {
+    do c=nextChar(); while (c>=0 && c!='\n' && c!='\r');
+   }
+
+  } while (c>=0 && Character.isWhitespace(c));
+
+  if (c<0) return null;
+
+  char quote=0;
+  sb.setLength(0);
+
+  while (c>=0 && (quote!=0 || !Character.isWhitespace(c)))
+  {
+   if (quote=='\'')
+   {
+    if (c=='\'') quote=0;
+     else sb.append((char)c);
+   }
+   else if (quote=='"')
+   {
+    if (c=='"') quote=0;
+     else if (c=='\\') c=appendEscaped("\"\\");
+     else sb.append((char)c);
+   }
+   else
+   {
+    if (c=='\'' || c=='"') quote=(char)c;
+     else if (c=='\\') c=appendEscaped(" \t\r\n'\"#\\");
+     else sb.append((char)c);
+   }
+
+   if (c>=0) c=nextChar();
+  }
+
+  if (quote!=0)
+   throw new IOException("Unterminated "+quote+" quote in response file");
+
+  return sb.toString();
+ }
+
+
+ // called after a backslash, returns the last char read
+ private int appendEscaped(String escapable) throws IOException
+ {
+  int c=nextChar();
+
+  if (c<0 || escapable.indexOf(c)<0) sb.append('\\');
+  if (c>=0) sb.append((char)c);
+
+  return c;
+ }
+
+}
@@ -41,6 +41,54 @@ public class Settings
  public Class<? extends CLIArgumentHandler> argumentHandlerClass;
  public boolean execAndExit;
  public String separator;
- public boolean isMultiValue=false;
+
+ /**
+  * Position of the field in the option table of its class
+  */
+ public int position=-1;
+
+
+ public static Settings forOption(String name, String aliases[], String configFileName, String usage, String operand, boolean documented,
+                                  int helpOrder, boolean required, Class<? extends CLIOptionHandler> handlerClass, boolean execAndExit,
+                                  String separator)
+ {
+  Settings res=new Settings();
+
+  res.type=Type.option;
+  res.name=name;
+  res.aliases=aliases;
+  res.configFileName=configFileName;
+  res.usage=usage;
+  res.operand=operand;
+  res.documented=documented;
+  res.helpOrder=helpOrder;
+  res.required=required;
+  res.optionHandlerClass=handlerClass;
+  res.execAndExit=execAndExit;
+  res.separator=separator;
+
+  return res;
+ }
+
+
+ public static Settings forArgument(int index, String nameInConfigFiles, String usage, String operand, boolean documented, boolean required,
+                                    String missing, Class<? extends CLIArgumentHandler> handlerClass, boolean execAndExit, String separator)
+ {
+  Settings res=new Settings();
+
+  res.type=Type.argument;
+  res.index=index;
+  res.configFileName=nameInConfigFiles;
+  res.usage=usage;
+  res.operand=operand;
+  res.documented=documented;
+  res.required=required;
+  res.missing=missing;
+  res.argumentHandlerClass=handlerClass;
+  res.execAndExit=execAndExit;
+  res.separator=separator;
+
+  return res;
+ }
 
 }
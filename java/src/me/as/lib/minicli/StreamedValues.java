@@ -0,0 +1,241 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli;
+
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * The values of a trailing argument declared as Stream, Iterator or Iterable (of String or Path): they are produced while the program
+ * consumes them, never collected.
+ *
+ * <p>
+ * Like for a List argument, options can still come after its values and -- (when it ends the options) makes all the following args values.
+ * The sources of the values are queued, in order, while the command line is parsed and opened only when the program iterates: a value,
+ * - for stdin (one value per non empty line) and response files. A response file met after the first value, or the rest of the one in
+ * which the first value is met, gives values only, its lines are not parsed as options.
+ * Errors reading files while iterating are thrown as UncheckedIOException. The files are closed when the values are exhausted or when the
+ * stream is closed.
+ */
+class StreamedValues implements Iterator<String>, Closeable
+{
+
+ static boolean isStreamed(Field field)
+ {
+  Class type=field.getType();
+  return (type==Stream.class || type==Iterator.class || type==Iterable.class);
+ }
+
+
+ static boolean isOfPaths(Field field)
+ {
+  return (elementType(field)==Path.class);
+ }
+
+
+ static Type elementType(Field field)
+ {
+  Type type=field.getGenericType();
+
+  if (type instanceof ParameterizedType)
+   return ((ParameterizedType)type).getActualTypeArguments()[0];
+
+  return null;
+ }
+
+ // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+ private static final Object stdinSource=new Object();
+
+ private final InputStream in;
+ private ArrayDeque<Object> sources=new ArrayDeque<>();
+ private ResponseFileReader reader=null;
+ private BufferedReader stdin=null;
+ private String nextValue=null;
+
+
+ // in is the stdin of the call
+ StreamedValues(InputStream in)
+ {
+  this.in=in;
+ }
+
+
+ // a value of the command line, - is stdin
+ void add(String value)
+ {
+  sources.add("-".equals(value) ? stdinSource : value);
+ }
+
+ // a response file met after the first value
+ void addResponseFile(Path path)
+ {
+  sources.add(path);
+ }
+
+ // the rest of the response file being read when the first value was met
+ void followedBy(ResponseFileReader reader)
+ {
+  sources.add(reader);
+ }
+
+
+ public boolean hasNext()
+ {
+  if (nextValue==null) nextValue=readNext();
+  return (nextValue!=null);
+ }
+
+
+ public String next()
+ {
+  if (!hasNext()) throw new NoSuchElementException();
+
+  String res=nextValue;
+  nextValue=null;
+  return res;
+ }
+
+
+ public void close()
+ {
+  stdin=null;
+
+  if (reader!=null)
+  {
+   try { reader.close(); } catch (IOException ignore) {}
+   reader=null;
+  }
+
+  for (Object source : sources)
+   if (source instanceof ResponseFileReader)
+    try { ((ResponseFileReader)source).close(); } catch (IOException ignore) {}
+
+  sources.clear();
+ }
+
+
+ private String readNext()
+ {
+  try
+  {
+   for (;;)
+   {
+    if (stdin!=null)
+    {
+     String line=stdin.readLine();
+
+     if (line==null) stdin=null;
+      else if (line.length()>0) return line;
+    }
+    else if (reader!=null)
+    {
+     String arg=reader.next();
+
+     if (arg!=null) return arg;
+
+     reader.close();
+     reader=null;
+    }
+    else if (!sources.isEmpty())
+    {
+     Object source=sources.poll();
+
+     if (source==stdinSource)
+      stdin=new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+     else if (source instanceof Path)
+      reader=new ResponseFileReader((Path)source);
+     else if (source instanceof ResponseFileReader)
+      reader=(ResponseFileReader)source;
+     else
+      return (String)source;
+    }
+    else
+    {
+     close();
+     return null;
+    }
+   }
+  }
+  catch (IOException ioe)
+  {
+   close();
+   throw new UncheckedIOException(ioe);
+  }
+ }
+
+
+ /**
+  * What is to be bound to the field: an Iterator, a Stream or a single use Iterable, of String or of Path
+  */
+ Object as(Field field)
+ {
+  Iterator<?> values=(isOfPaths(field) ? new Iterator<Path>()
+  {
+   public boolean hasNext()
+   {
+    return StreamedValues.this.hasNext();
+   }
+
+   public Path next()
+   {
+    return Paths.get(StreamedValues.this.next());
+   }
+  } : this);
+
+  Class type=field.getType();
+
+  if (type==Iterator.class)
+   return values;
+
+  if (type==Stream.class)
+   return StreamSupport.stream(Spliterators.spliteratorUnknownSize(values, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+
+  return new Iterable<Object>()
+  {
+   private boolean taken=false;
+
+   public Iterator<Object> iterator()
+   {
+    if (taken) throw new IllegalStateException("The values of a streamed argument can be iterated only once");
+    taken=true;
+    return (Iterator<Object>)values;
+   }
+  };
+ }
+
+}
@@ -19,7 +19,6 @@ package me.as.lib.minicli;
 
 
 import me.as.lib.core.extra.BoxFor2;
-import me.as.lib.core.lang.ClassExtras;
 
 import java.lang.reflect.Field;
 
@@ -29,9 +28,10 @@ public class VersionHandler implements CLIOptionHandler
 
  public int handleOption(CommandLineHandler handler, int argsPos, BoxFor2<Field, Settings> option)
  {
-  NoOperand<String> version=(NoOperand<String>)ClassExtras.getFieldValue_bruteForce(handler.getRunnerInstance(), option.element1);
+  NoOperand<String> version=(NoOperand<String>)handler.getFieldValue(option);
 
-  System.out.println(version.customContent);
+  handler.getOut().println(version.customContent);
+  handler.getOut().flush();
 
   return 0;
  }
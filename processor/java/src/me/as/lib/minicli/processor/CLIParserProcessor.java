@@ -0,0 +1,730 @@
+/*
+ * Copyright 2019 Antonio Sorrentini
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package me.as.lib.minicli.processor;
+
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+
+/**
+ * Emits, for every class having fields annotated with CLIOption or CLIArgument (directly or through an annotation
+ * like HelpCLIOption, VersionCLIOption or ConfigFileCLIOption), a class named &lt;Clazz&gt;$CLIParser implementing
+ * me.as.lib.minicli.GeneratedCLIParser. At runtime CommandLineHandler uses it, when present, instead of reflection.
+ *
+ * <p>
+ * It also writes, for every tool having subcommands (classes annotated with CLISubcommand), the index
+ * META-INF/minicli/&lt;tool class&gt;/subcommands used by me.as.lib.minicli.CLISubcommands, with a line for every verb:
+ * name TAB class name TAB aliases (comma separated) TAB usage. An incremental compilation merges the subcommands it compiles into the
+ * index already in the class output, dropping the ones whose class is gone.
+ *
+ * <p>
+ * Just put the jar of this module on the annotation processor path of javac, nothing else is needed.
+ */
+@SupportedAnnotationTypes("*")
+public class CLIParserProcessor extends AbstractProcessor
+{
+ static final String minicliPackage="me.as.lib.minicli";
+ static final String cliOption=minicliPackage+".CLIOption";
+ static final String cliArgument=minicliPackage+".CLIArgument";
+ static final String classNameSuffix="$CLIParser";
+ static final String commandLineHandlerField="commandLineHandler";
+ static final String cliSubcommand=minicliPackage+".CLISubcommand";
+ static final String subcommandsResource="META-INF/minicli/%s/subcommands";
+
+
+ static class TableEntry
+ {
+  VariableElement field;
+  TypeElement declaringClass;
+  AnnotationMirror annotation;
+  boolean isOption;
+  boolean direct;
+ }
+
+
+ private Elements elements;
+ private Types types;
+
+ // tool binary name -> verb -> index line (sorted, so that the index does not depend on the order of compilation), written in the last round
+ private final Map<String, Map<String, String>> subcommands=new LinkedHashMap<>();
+ private final Map<String, List<Element>> subcommandOrigins=new HashMap<>();
+ // tool binary name -> verb -> index line already in the class output, read before the index is written again
+ private final Map<String, Map<String, String>> indexed=new HashMap<>();
+
+
+ public SourceVersion getSupportedSourceVersion()
+ {
+  return SourceVersion.latestSupported();
+ }
+
+
+ public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+ {
+  elements=processingEnv.getElementUtils();
+  types=processingEnv.getTypeUtils();
+
+  for (Element element : roundEnv.getRootElements())
+   processType(element);
+
+  TypeElement subcommandAnnotation=elements.getTypeElement(cliSubcommand);
+
+  if (subcommandAnnotation!=null)
+  {
+   for (Element element : roundEnv.getElementsAnnotatedWith(subcommandAnnotation))
+    collectSubcommand((TypeElement)element);
+  }
+
+  if (roundEnv.processingOver())
+   writeSubcommands();
+
+  return false;
+ }
+
+
+ private void processType(Element element)
+ {
+  if (element.getKind()!=ElementKind.CLASS) return;
+
+  TypeElement type=(TypeElement)element;
+
+  for (Element enclosed : type.getEnclosedElements())
+   processType(enclosed);
+
+  if (type.getModifiers().contains(Modifier.ABSTRACT)) return;
+
+  List<TableEntry> table=collectTable(type);
+
+  if (table.size()>0)
+  {
+   if (isReachable(type, type) && areDeclaringClassesReachable(type, table) && areHandlerClassesReachable(type, table))
+    generate(type, table);
+   else
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+     "miniCLI: no parser generated for '"+type.getQualifiedName()+"' because it (or a class it uses) is not reachable from its package, reflection will be used", type);
+  }
+ }
+
+
+ // mirrors CommandLineHandler._i_getTheRightAnnotation
+ private AnnotationMirror findCLIAnnotation(List<? extends AnnotationMirror> annos, int deep)
+ {
+  if (deep>1) return null;
+
+  AnnotationMirror res=null;
+  int t, len=annos.size();
+
+  for (t=0;t<len && res==null;t++)
+  {
+   TypeElement annoType=(TypeElement)annos.get(t).getAnnotationType().asElement();
+   String name=annoType.getQualifiedName().toString();
+
+   if (name.equals(cliOption) || name.equals(cliArgument))
+    res=annos.get(t);
+   else
+    res=findCLIAnnotation(annoType.getAnnotationMirrors(), deep+1);
+  }
+
+  return res;
+ }
+
+
+ // same order of ClassExtras.getAllFields: the class first, then its superclasses
+ private List<TableEntry> collectTable(TypeElement type)
+ {
+  List<TableEntry> res=new ArrayList<>();
+  TypeElement current=type;
+
+  while (current!=null)
+  {
+   for (Element enclosed : current.getEnclosedElements())
+   {
+    if (enclosed.getKind()==ElementKind.FIELD)
+    {
+     AnnotationMirror anno=findCLIAnnotation(enclosed.getAnnotationMirrors(), 0);
+
+     if (anno!=null)
+     {
+      TableEntry entry=new TableEntry();
+      entry.field=(VariableElement)enclosed;
+      entry.declaringClass=current;
+      entry.annotation=anno;
+      entry.isOption=((TypeElement)anno.getAnnotationType().asElement()).getQualifiedName().contentEquals(cliOption);
+      entry.direct=isDirectlyAssignable(type, entry);
+      res.add(entry);
+     }
+    }
+   }
+
+   TypeMirror superclass=current.getSuperclass();
+   current=(superclass.getKind()==TypeKind.DECLARED ? (TypeElement)((DeclaredType)superclass).asElement() : null);
+  }
+
+  return res;
+ }
+
+
+ private boolean isDirectlyAssignable(TypeElement type, TableEntry entry)
+ {
+  Set<Modifier> modifiers=entry.field.getModifiers();
+
+  if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL))
+   return false;
+
+  return (samePackage(type, entry.declaringClass) || modifiers.contains(Modifier.PUBLIC));
+ }
+
+
+ private boolean samePackage(Element e1, Element e2)
+ {
+  return elements.getPackageOf(e1).equals(elements.getPackageOf(e2));
+ }
+
+
+ private boolean isReachable(TypeElement from, TypeElement type)
+ {
+  Element current=type;
+
+  while (current instanceof TypeElement)
+  {
+   Set<Modifier> modifiers=current.getModifiers();
+
+   if (modifiers.contains(Modifier.PRIVATE)) return false;
+   if (!modifiers.contains(Modifier.PUBLIC) && !samePackage(from, current)) return false;
+
+   current=current.getEnclosingElement();
+  }
+
+  return true;
+ }
+
+
+ private boolean areDeclaringClassesReachable(TypeElement type, List<TableEntry> table)
+ {
+  for (TableEntry entry : table)
+  {
+   if (!isReachable(type, entry.declaringClass)) return false;
+  }
+
+  return true;
+ }
+
+
+ // the handler classes are written as class literals in the generated parser
+ private boolean areHandlerClassesReachable(TypeElement type, List<TableEntry> table)
+ {
+  for (TableEntry entry : table)
+  {
+   TypeMirror handler=types.erasure((TypeMirror)valuesOf(entry.annotation).get("handlerClass").getValue());
+
+   if (handler.getKind()==TypeKind.DECLARED && !isReachable(type, (TypeElement)((DeclaredType)handler).asElement())) return false;
+  }
+
+  return true;
+ }
+
+
+ private Map<String, AnnotationValue> valuesOf(AnnotationMirror anno)
+ {
+  Map<String, AnnotationValue> res=new HashMap<>();
+  Map<? extends ExecutableElement, ? extends AnnotationValue> values=elements.getElementValuesWithDefaults(anno);
+
+  for (ExecutableElement key : values.keySet())
+   res.put(key.getSimpleName().toString(), values.get(key));
+
+  return res;
+ }
+
+
+ // the value of an array element of an annotation
+ @SuppressWarnings("unchecked")
+ static List<? extends AnnotationValue> listOf(AnnotationValue value)
+ {
+  return (List<? extends AnnotationValue>)value.getValue();
+ }
+
+
+ private String stringLiteral(String value)
+ {
+  return elements.getConstantExpression(value);
+ }
+
+
+ private String literalOf(AnnotationValue value)
+ {
+  Object v=value.getValue();
+
+  if (v instanceof String)
+   return stringLiteral((String)v);
+
+  if (v instanceof TypeMirror)
+   return types.erasure((TypeMirror)v).toString()+".class";
+
+  if (v instanceof List)
+  {
+   StringBuilder sb=new StringBuilder("new String[]{");
+   List<? extends AnnotationValue> list=listOf(value);
+   int t, len=list.size();
+
+   for (t=0;t<len;t++)
+   {
+    if (t>0) sb.append(", ");
+    sb.append(literalOf(list.get(t)));
+   }
+
+   return sb.append("}").toString();
+  }
+
+  return String.valueOf(v);
+ }
+
+
+ private String settingsOf(TableEntry entry)
+ {
+  Map<String, AnnotationValue> values=valuesOf(entry.annotation);
+  String names[];
+  String factory;
+
+  if (entry.isOption)
+  {
+   factory="forOption";
+   names=new String[]{"name", "aliases", "configFileName", "usage", "operand", "documented", "helpOrder", "required", "handlerClass",
+    "execAndExit", "separator"};
+  }
+  else
+  {
+   factory="forArgument";
+   names=new String[]{"index", "nameInConfigFiles", "usage", "operand", "documented", "required", "missing", "handlerClass", "execAndExit",
+    "separator"};
+  }
+
+  StringBuilder sb=new StringBuilder(minicliPackage+".Settings."+factory+"(");
+  int t, len=names.length;
+
+  for (t=0;t<len;t++)
+  {
+   if (t>0) sb.append(", ");
+   sb.append(literalOf(values.get(names[t])));
+  }
+
+  return sb.append(")").toString();
+ }
+
+
+ private List<String> namesOf(TableEntry entry)
+ {
+  List<String> res=new ArrayList<>();
+  Map<String, AnnotationValue> values=valuesOf(entry.annotation);
+
+  res.add(undotted((String)values.get("name").getValue()));
+
+  for (AnnotationValue alias : listOf(values.get("aliases")))
+   res.add(undotted((String)alias.getValue()));
+
+  return res;
+ }
+
+
+ // like CLISchema.addOption: a leading dot only hides a name from the help
+ private static String undotted(String name)
+ {
+  return (name.startsWith(".") ? name.substring(1) : name);
+ }
+
+
+ // mirrors CLISchema.findCommandLineHandlerBinder: the first field with that name, in the order of collectTable
+ private VariableElement findCommandLineHandlerField(TypeElement type)
+ {
+  TypeElement current=type;
+
+  while (current!=null)
+  {
+   for (Element enclosed : current.getEnclosedElements())
+   {
+    if (enclosed.getKind()==ElementKind.FIELD && enclosed.getSimpleName().contentEquals(commandLineHandlerField))
+     return (VariableElement)enclosed;
+   }
+
+   TypeMirror superclass=current.getSuperclass();
+   current=(superclass.getKind()==TypeKind.DECLARED ? (TypeElement)((DeclaredType)superclass).asElement() : null);
+  }
+
+  return null;
+ }
+
+
+ private boolean canSetCommandLineHandler(TypeElement type, VariableElement field)
+ {
+  if (field==null) return false;
+
+  TableEntry entry=new TableEntry();
+  entry.field=field;
+  entry.declaringClass=(TypeElement)field.getEnclosingElement();
+
+  TypeElement handlerType=elements.getTypeElement(minicliPackage+".CommandLineHandler");
+
+  return (handlerType!=null && isDirectlyAssignable(type, entry) && isReachable(type, entry.declaringClass) &&
+   types.isAssignable(types.erasure(handlerType.asType()), types.erasure(field.asType())));
+ }
+
+
+ // the field is of the given primitive kind or of its boxed type
+ private boolean isOfKind(VariableElement field, TypeKind kind)
+ {
+  TypeMirror fieldType=field.asType();
+
+  if (fieldType.getKind()==kind) return true;
+
+  try
+  {
+   return types.isSameType(fieldType, types.boxedClass(types.getPrimitiveType(kind)).asType());
+  }
+  catch (IllegalArgumentException iae)
+  {
+   return false;
+  }
+ }
+
+
+ private void appendPrimitiveSetter(StringBuilder sb, List<TableEntry> table, String typeName, String methodName, TypeKind kind, String primitive)
+ {
+  int t, len=table.size();
+
+  sb.append(" public void ").append(methodName).append("(Object instance, int position, ").append(primitive).append(" value)\n {\n");
+  sb.append("  switch (position)\n  {\n");
+
+  for (t=0;t<len;t++)
+  {
+   TableEntry entry=table.get(t);
+
+   if (entry.direct && isOfKind(entry.field, kind))
+    sb.append("   case ").append(t).append(": ((").append(typeName).append(")instance).").append(entry.field.getSimpleName()).append("=value; break;\n");
+  }
+
+  sb.append("   default: set(instance, position, value); break;\n  }\n }\n\n");
+ }
+
+
+ private void generate(TypeElement type, List<TableEntry> table)
+ {
+  PackageElement pkg=elements.getPackageOf(type);
+  String packageName=pkg.getQualifiedName().toString();
+  String binaryName=elements.getBinaryName(type).toString();
+  String simpleName=(pkg.isUnnamed() ? binaryName : binaryName.substring(packageName.length()+1))+classNameSuffix;
+  String typeName=types.erasure(type.asType()).toString();
+  Map<String, TableEntry> dispatch=new LinkedHashMap<>();
+  int t, len=table.size();
+
+  for (t=0;t<len;t++)
+  {
+   TableEntry entry=table.get(t);
+
+   if (entry.isOption)
+   {
+    for (String name : namesOf(entry))
+    {
+     TableEntry yet=dispatch.put(name, entry);
+
+     if (yet!=null)
+     {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+       "The option with name or alias '"+name+"' for field named '"+entry.field.getSimpleName()+
+       "' overrides the same for field named '"+yet.field.getSimpleName()+"'", entry.field);
+      return;
+     }
+    }
+   }
+  }
+
+  StringBuilder sb=new StringBuilder();
+
+  if (!pkg.isUnnamed()) sb.append("package ").append(packageName).append(";\n\n\n");
+
+  sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+  sb.append("public final class ").append(simpleName).append(" implements ").append(minicliPackage).append(".GeneratedCLIParser\n{\n");
+
+  sb.append(" private static final Class<?> declaringClasses[]={");
+  for (t=0;t<len;t++)
+  {
+   if (t>0) sb.append(", ");
+   sb.append(types.erasure(table.get(t).declaringClass.asType())).append(".class");
+  }
+  sb.append("};\n");
+
+  sb.append(" private static final String fieldNames[]={");
+  for (t=0;t<len;t++)
+  {
+   if (t>0) sb.append(", ");
+   sb.append(stringLiteral(table.get(t).field.getSimpleName().toString()));
+  }
+  sb.append("};\n\n\n");
+
+  sb.append(" public Class<?>[] declaringClasses()\n {\n  return declaringClasses.clone();\n }\n\n");
+  sb.append(" public String[] fieldNames()\n {\n  return fieldNames.clone();\n }\n\n");
+
+  sb.append(" public ").append(minicliPackage).append(".Settings[] settings()\n {\n  return new ").append(minicliPackage).append(".Settings[]\n  {\n");
+  for (t=0;t<len;t++)
+   sb.append("   ").append(settingsOf(table.get(t))).append(t<len-1 ? ",\n" : "\n");
+  sb.append("  };\n }\n\n");
+
+  sb.append(" public int dispatch(String name)\n {\n  switch (name)\n  {\n");
+  for (String name : dispatch.keySet())
+   sb.append("   case ").append(stringLiteral(name)).append(": return ").append(table.indexOf(dispatch.get(name))).append(";\n");
+  sb.append("   default: return -1;\n  }\n }\n\n");
+
+  sb.append(" public boolean isDirect(int position)\n {\n  switch (position)\n  {\n");
+  for (t=0;t<len;t++)
+  {
+   if (table.get(t).direct)
+    sb.append("   case ").append(t).append(": return true;\n");
+  }
+  sb.append("   default: return false;\n  }\n }\n\n");
+
+  sb.append(" public void set(Object instance, int position, Object value)\n {\n  switch (position)\n  {\n");
+  for (t=0;t<len;t++)
+  {
+   TableEntry entry=table.get(t);
+
+   if (entry.direct)
+   {
+    sb.append("   case ").append(t).append(": ((").append(typeName).append(")instance).").append(entry.field.getSimpleName())
+     .append("=(").append(types.erasure(entry.field.asType())).append(")value; break;\n");
+   }
+  }
+  sb.append("   default: throw new IllegalArgumentException(\"No directly assignable field at position \"+position);\n  }\n }\n\n");
+
+  sb.append(" public Object get(Object instance, int position)\n {\n  switch (position)\n  {\n");
+  for (t=0;t<len;t++)
+  {
+   TableEntry entry=table.get(t);
+
+   if (entry.direct)
+    sb.append("   case ").append(t).append(": return ((").append(typeName).append(")instance).").append(entry.field.getSimpleName()).append(";\n");
+  }
+  sb.append("   default: throw new IllegalArgumentException(\"No directly assignable field at position \"+position);\n  }\n }\n\n");
+
+  appendPrimitiveSetter(sb, table, typeName, "setInt", TypeKind.INT, "int");
+  appendPrimitiveSetter(sb, table, typeName, "setLong", TypeKind.LONG, "long");
+  appendPrimitiveSetter(sb, table, typeName, "setFloat", TypeKind.FLOAT, "float");
+  appendPrimitiveSetter(sb, table, typeName, "setDouble", TypeKind.DOUBLE, "double");
+  appendPrimitiveSetter(sb, table, typeName, "setBoolean", TypeKind.BOOLEAN, "boolean");
+
+  VariableElement handlerField=findCommandLineHandlerField(type);
+
+  if (canSetCommandLineHandler(type, handlerField))
+  {
+   sb.append(" public boolean hasDirectCommandLineHandler()\n {\n  return true;\n }\n\n");
+   sb.append(" public void setCommandLineHandler(Object instance, Object handler)\n {\n  ((").append(typeName).append(")instance).")
+    .append(commandLineHandlerField).append("=(").append(types.erasure(handlerField.asType())).append(")handler;\n }\n\n");
+  }
+
+  sb.append("}\n");
+
+  try (Writer writer=processingEnv.getFiler().createSourceFile(packageName.length()>0 ? packageName+"."+simpleName : simpleName, type).openWriter())
+  {
+   writer.write(sb.toString());
+  }
+  catch (IOException ioe)
+  {
+   processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write the parser for '"+type.getQualifiedName()+"': "+ioe, type);
+  }
+ }
+
+
+ private void collectSubcommand(TypeElement type)
+ {
+  AnnotationMirror anno=null;
+
+  for (AnnotationMirror am : type.getAnnotationMirrors())
+  {
+   if (((TypeElement)am.getAnnotationType().asElement()).getQualifiedName().contentEquals(cliSubcommand))
+    anno=am;
+  }
+
+  Map<String, AnnotationValue> values=valuesOf(anno);
+  TypeElement tool=(TypeElement)types.asElement(types.erasure((TypeMirror)values.get("of").getValue()));
+  String toolName=elements.getBinaryName(tool).toString();
+  Map<String, String> verbs=subcommands.computeIfAbsent(toolName, k -> new TreeMap<>());
+  indexed.computeIfAbsent(toolName, this::readIndex);
+  String name=(String)values.get("name").getValue();
+  List<String> verbNames=new ArrayList<>();
+
+  if (!isReachable(type, type) || !type.getModifiers().contains(Modifier.PUBLIC))
+   processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+    "miniCLI: the subcommand '"+name+"' must be a public class to be loaded by CLISubcommands", type);
+
+  verbNames.add(name);
+  for (AnnotationValue alias : listOf(values.get("aliases")))
+   verbNames.add((String)alias.getValue());
+
+  for (String verb : verbNames)
+  {
+   if (verb.isEmpty() || verb.startsWith("-") || verb.matches(".*[\\s,].*"))
+   {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "'"+verb+"' is not a valid name for a subcommand", type);
+    return;
+   }
+
+   for (String line : verbs.values())
+   {
+    String fields[]=line.split("\t", -1);
+
+    if (fields[0].equals(verb) || (","+fields[2]+",").contains(","+verb+","))
+    {
+     processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+      "The subcommand '"+verb+"' of '"+toolName+"' is also defined by '"+fields[1]+"'", type);
+     return;
+    }
+   }
+  }
+
+  String aliases=String.join(",", verbNames.subList(1, verbNames.size()));
+
+  verbs.put(name, name+"\t"+elements.getBinaryName(type)+"\t"+aliases+"\t"+escape((String)values.get("usage").getValue()));
+  subcommandOrigins.computeIfAbsent(toolName, k -> new ArrayList<>()).add(type);
+ }
+
+
+ // an index line must stay one line
+ private static String escape(String text)
+ {
+  return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "").replace('\t', ' ');
+ }
+
+
+ // the index written by a previous compilation: an incremental build only sees the subcommands it recompiles
+ private Map<String, String> readIndex(String toolName)
+ {
+  Map<String, String> res=new TreeMap<>();
+
+  try
+  {
+   CharSequence index=processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", String.format(subcommandsResource, toolName)).getCharContent(true);
+
+   for (String line : index.toString().split("\n"))
+   {
+    if (line.split("\t", -1).length>=4) res.put(line.substring(0, line.indexOf('\t')), line);
+   }
+  }
+  catch (IOException | IllegalArgumentException e)
+  {
+   // no index yet
+  }
+
+  return res;
+ }
+
+
+ // the lines of the previous index which still hold: their class still exists, was not recompiled and none of their verbs was taken
+ // by a recompiled one, plus the lines of the subcommands compiled now
+ private Map<String, String> mergedIndex(String toolName)
+ {
+  Map<String, String> res=new TreeMap<>();
+  Map<String, String> compiled=subcommands.get(toolName);
+  List<String> compiledClasses=new ArrayList<>();
+  List<String> compiledVerbs=new ArrayList<>();
+
+  for (String line : compiled.values())
+  {
+   String fields[]=line.split("\t", -1);
+   compiledClasses.add(fields[1]);
+   compiledVerbs.addAll(verbsOf(fields));
+  }
+
+  for (String line : indexed.getOrDefault(toolName, new TreeMap<>()).values())
+  {
+   String fields[]=line.split("\t", -1);
+   boolean taken=false;
+
+   for (String verb : verbsOf(fields))
+    taken|=compiledVerbs.contains(verb);
+
+   if (!taken && !compiledClasses.contains(fields[1]) && elements.getTypeElement(fields[1].replace('$', '.'))!=null)
+    res.put(fields[0], line);
+  }
+
+  res.putAll(compiled);
+  return res;
+ }
+
+
+ private static List<String> verbsOf(String fields[])
+ {
+  List<String> res=new ArrayList<>();
+
+  res.add(fields[0]);
+  if (!fields[2].isEmpty()) res.addAll(Arrays.asList(fields[2].split(",")));
+
+  return res;
+ }
+
+
+ private void writeSubcommands()
+ {
+  for (String toolName : subcommands.keySet())
+  {
+   List<Element> origins=subcommandOrigins.get(toolName);
+   String resource=String.format(subcommandsResource, toolName);
+
+   try (Writer writer=processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resource,
+    origins.toArray(new Element[origins.size()])).openWriter())
+   {
+    for (String line : mergedIndex(toolName).values())
+     writer.write(line+"\n");
+   }
+   catch (IOException ioe)
+   {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write the subcommands of '"+toolName+"': "+ioe);
+   }
+  }
+
+  subcommands.clear();
+  subcommandOrigins.clear();
+  indexed.clear();
+ }
+
+
+}